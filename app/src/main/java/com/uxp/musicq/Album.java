@@ -6,6 +6,7 @@ public class Album {
     private String artist;
     private int songCount;
     private String firstSongPath;
+    private long totalDuration;
 
     public Album(long id, String name, String artist, int songCount) {
         this.id = id;
@@ -38,6 +39,14 @@ public class Album {
         this.firstSongPath = path;
     }
 
+    public long getTotalDuration() {
+        return totalDuration;
+    }
+
+    public void setTotalDuration(long totalDuration) {
+        this.totalDuration = totalDuration;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
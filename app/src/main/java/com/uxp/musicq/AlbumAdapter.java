@@ -10,7 +10,8 @@ import androidx.recyclerview.widget.RecyclerView;
 import java.util.ArrayList;
 import java.util.List;
 
-public class AlbumAdapter extends RecyclerView.Adapter<AlbumAdapter.AlbumViewHolder> {
+public class AlbumAdapter extends RecyclerView.Adapter<AlbumAdapter.AlbumViewHolder>
+        implements ArtPrefetcher.ArtSource {
     private List<Album> albums;
     private OnAlbumClickListener listener;
 
@@ -37,11 +38,26 @@ public class AlbumAdapter extends RecyclerView.Adapter<AlbumAdapter.AlbumViewHol
         holder.bind(album, position);
     }
 
+    @Override
+    public void onViewRecycled(@NonNull AlbumViewHolder holder) {
+        holder.cancelArt();
+    }
+
     @Override
     public int getItemCount() {
         return albums.size();
     }
 
+    @Override
+    public long getArtAlbumId(int position) {
+        return albums.get(position).getId();
+    }
+
+    @Override
+    public String getArtPath(int position) {
+        return albums.get(position).getFirstSongPath();
+    }
+
     public void updateAlbums(List<Album> newAlbums) {
         this.albums = newAlbums != null ? newAlbums : new ArrayList<>();
         notifyDataSetChanged();
@@ -50,6 +66,7 @@ public class AlbumAdapter extends RecyclerView.Adapter<AlbumAdapter.AlbumViewHol
     class AlbumViewHolder extends RecyclerView.ViewHolder {
         private TextView txtAlbumName, txtArtist, txtSongCount;
         private ImageView imgAlbumArt;
+        private AlbumArtLoader.Request artRequest;
 
         public AlbumViewHolder(@NonNull View itemView) {
             super(itemView);
@@ -64,12 +81,9 @@ public class AlbumAdapter extends RecyclerView.Adapter<AlbumAdapter.AlbumViewHol
             txtArtist.setText(album.getArtist());
             txtSongCount.setText(album.getSongCount() + " songs");
 
-            // Load album art from first song in album
-            if (album.getFirstSongPath() != null) {
-                AlbumArtLoader.loadAlbumArt(itemView.getContext(), album.getFirstSongPath(), imgAlbumArt);
-            } else {
-                imgAlbumArt.setImageResource(R.drawable.default_album_art);
-            }
+            // Load album art from first song in album; the default art if there is none
+            artRequest = AlbumArtLoader.loadAlbumArt(itemView.getContext(), album.getId(),
+                    album.getFirstSongPath(), AlbumArtLoader.ArtSize.LIST, imgAlbumArt);
 
             itemView.setOnClickListener(v -> {
                 if (listener != null) {
@@ -77,5 +91,12 @@ public class AlbumAdapter extends RecyclerView.Adapter<AlbumAdapter.AlbumViewHol
                 }
             });
         }
+
+        void cancelArt() {
+            if (artRequest != null) {
+                artRequest.cancel();
+                artRequest = null;
+            }
+        }
     }
 }
\ No newline at end of file
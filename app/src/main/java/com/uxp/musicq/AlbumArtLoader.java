@@ -1,22 +1,81 @@
 package com.uxp.musicq;
 
+import android.content.ContentUris;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.provider.MediaStore;
 import android.util.Log;
 import android.util.LruCache;
+import android.util.Size;
 import android.widget.ImageView;
 import org.jaudiotagger.audio.AudioFile;
 import org.jaudiotagger.audio.AudioFileIO;
 import org.jaudiotagger.tag.Tag;
 import org.jaudiotagger.tag.images.Artwork;
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class AlbumArtLoader {
     private static final String TAG = "AlbumArtLoader";
+    // Content hash and size -> bitmap, shared by albums with identical covers
     private static LruCache<String, Bitmap> memoryCache;
-    private static final int MAX_IMAGE_SIZE = 512;
+    // Art key and size -> content hash of its art
+    private static final LruCache<String, String> artHashes = new LruCache<>(4096);
+    // Art keys known to have no art
+    private static final LruCache<String, Boolean> noArt = new LruCache<>(4096);
+    // Directory and modification time -> cover image file, or "" if none
+    private static final LruCache<String, String> folderCovers = new LruCache<>(256);
+    // Cover image names, most likely first
+    private static final List<String> COVER_NAMES = Arrays.asList("cover", "folder", "front", "album");
+    private static final List<String> COVER_EXTENSIONS = Arrays.asList(".jpg", ".jpeg", ".png");
+    private static final long MAX_COVER_BYTES = 8L * 1024 * 1024;
+    private static final int MAX_DECODE_THREADS = 3;
+    private static final BitmapPool bitmapPool;
+
+    // Users of bitmaps that may be pooled once evicted; guarded by bitmapLock
+    private static final Object bitmapLock = new Object();
+    // Views and the art they show
+    private static final WeakHashMap<ImageView, Bitmap> shown = new WeakHashMap<>();
+    // Decodes in progress, results not yet delivered, thumbnails being written
+    private static final IdentityHashMap<Bitmap, Integer> inUse = new IdentityHashMap<>();
+    // Passed to a callback, so held somewhere we can't see
+    private static final Set<Bitmap> handedOut = Collections.newSetFromMap(new WeakHashMap<>());
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final ThreadPoolExecutor decoder;
+    // Thumbnails are written to disk after they've been shown, one at a time
+    private static final ExecutorService diskWriter = Executors.newSingleThreadExecutor(runnable ->
+            new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "ArtDiskWriter"));
+    // Art key and size -> decode queued or running for it
+    private static final Map<String, DecodeTask> inFlight = new HashMap<>();
 
     static {
         final int maxMemory = (int) (Runtime.getRuntime().maxMemory() / 1024);
@@ -27,45 +86,561 @@ public class AlbumArtLoader {
             protected int sizeOf(String key, Bitmap bitmap) {
                 return bitmap.getByteCount() / 1024;
             }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                if (oldValue != newValue) {
+                    recycle(oldValue);
+                }
+            }
         };
+        bitmapPool = new BitmapPool(cacheSize * 1024L / 4);
+
+        int threads = Math.max(1, Math.min(MAX_DECODE_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+        AtomicInteger threadNumber = new AtomicInteger();
+        decoder = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LifoQueue(),
+                runnable -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, "ArtDecoder-" + threadNumber.incrementAndGet()));
+    }
+
+    /** Art is decoded and cached per size; sizes are the longest side in pixels. */
+    public enum ArtSize {
+        LIST(192),
+        NOTIFICATION(320),
+        PLAYER(720);
+
+        final int pixels;
+
+        ArtSize(int pixels) {
+            this.pixels = pixels;
+        }
+    }
+
+    // Newest first, so rows on screen after a fling load before those scrolled away
+    private static class LifoQueue extends LinkedBlockingDeque<Runnable> {
+        @Override
+        public boolean offer(Runnable runnable) {
+            if (runnable instanceof DecodeTask && ((DecodeTask) runnable).prefetch) {
+                return offerLast(runnable);
+            }
+            return offerFirst(runnable);
+        }
     }
 
-    public static void loadAlbumArt(Context context, String filePath, ImageView imageView) {
-        if (context == null || imageView == null || filePath == null) {
+    /** Handle for one load; cancel it when the view is recycled. */
+    public static final class Request {
+        private final DecodeTask task;
+        private final WeakReference<ImageView> viewRef;
+        private final ArtCallback callback;
+        private boolean cancelled;
+
+        private Request(DecodeTask task, ImageView view, ArtCallback callback) {
+            this.task = task;
+            this.viewRef = new WeakReference<>(view);
+            this.callback = callback;
+        }
+
+        public void cancel() {
+            if (task == null) return;
+            synchronized (inFlight) {
+                if (cancelled) return;
+                cancelled = true;
+                task.targets.remove(this);
+                if (task.targets.isEmpty() && !task.started.get()) {
+                    inFlight.remove(task.key, task);
+                    decoder.remove(task);
+                }
+            }
+        }
+    }
+
+    public interface ArtCallback {
+        void onArtLoaded(Bitmap bitmap);
+    }
+
+    // One decode shared by every request for the same art and size
+    private static class DecodeTask implements Runnable {
+        final Context context;
+        final long albumId;
+        final String artKey;
+        final ArtSize size;
+        final String key;
+        final String filePath;
+        final List<Request> targets = new ArrayList<>();
+        final AtomicBoolean started = new AtomicBoolean();
+        // Only prefetches want it so far; queued behind loads for views
+        boolean prefetch;
+
+        DecodeTask(Context context, long albumId, String filePath, ArtSize size) {
+            this.context = context;
+            this.albumId = albumId;
+            this.artKey = artKey(albumId, filePath);
+            this.size = size;
+            this.key = sizedKey(artKey, size);
+            this.filePath = filePath;
+        }
+
+        boolean abandonIfCancelled() {
+            synchronized (inFlight) {
+                if (!targets.isEmpty()) return false;
+                inFlight.remove(key, this);
+                return true;
+            }
+        }
+
+        @Override
+        public void run() {
+            started.set(true);
+
+            Bitmap bitmap = null;
+            try {
+                if (!abandonIfCancelled()) {
+                    bitmap = loadBitmap(context, albumId, artKey, size, filePath, this);
+                }
+            } catch (Exception e) {
+                // A bad file costs its waiters the placeholder, not the process
+                Log.e(TAG, "Error loading album art for " + filePath, e);
+            } finally {
+                List<Request> requests;
+                synchronized (inFlight) {
+                    inFlight.remove(key, this);
+                    requests = new ArrayList<>(targets);
+                }
+                if (!requests.isEmpty()) {
+                    Bitmap loaded = bitmap;
+                    mainHandler.post(() -> {
+                        deliver(loaded, requests);
+                        release(loaded);
+                    });
+                } else {
+                    release(bitmap);
+                }
+            }
+        }
+    }
+
+    /** Sets the album's art on the view, decoding in the background if it isn't cached. */
+    public static Request loadAlbumArt(Context context, long albumId, String filePath, ArtSize size,
+                                       ImageView imageView) {
+        if (imageView == null) {
+            return new Request(null, null, null);
+        }
+        cancel(imageView);
+
+        imageView.setTag(null);
+        if (context == null || filePath == null) {
             setDefaultArt(imageView);
-            return;
+            return new Request(null, imageView, null);
+        }
+
+        String artKey = artKey(albumId, filePath);
+        synchronized (bitmapLock) {
+            Bitmap cached = getCached(artKey, size);
+            if (cached != null) {
+                showBitmap(imageView, cached);
+                return new Request(null, imageView, null);
+            }
+        }
+        // Not the previous art: its bitmap may be pooled once the view lets go
+        setDefaultArt(imageView);
+        if (noArt.get(artKey) != null) {
+            return new Request(null, imageView, null);
+        }
+
+        Request request = enqueue(context, albumId, filePath, size, imageView, null, false);
+        imageView.setTag(request);
+        return request;
+    }
+
+    /** Like the view overload, for art that isn't shown in a view. */
+    public static Request loadAlbumArt(Context context, long albumId, String filePath, ArtSize size,
+                                       ArtCallback callback) {
+        if (context == null || filePath == null) {
+            callback.onArtLoaded(null);
+            return new Request(null, null, null);
+        }
+
+        String artKey = artKey(albumId, filePath);
+        Bitmap cached;
+        synchronized (bitmapLock) {
+            cached = getCached(artKey, size);
+            if (cached != null) {
+                handedOut.add(cached);
+            }
+        }
+        if (cached != null || noArt.get(artKey) != null) {
+            callback.onArtLoaded(cached);
+            return new Request(null, null, null);
+        }
+
+        return enqueue(context, albumId, filePath, size, null, callback, false);
+    }
+
+    /** Decodes the album's art into the memory cache ahead of it being shown. */
+    public static Request prefetch(Context context, long albumId, String filePath, ArtSize size) {
+        if (context == null || filePath == null) {
+            return new Request(null, null, null);
+        }
+
+        String artKey = artKey(albumId, filePath);
+        if (noArt.get(artKey) != null) {
+            return new Request(null, null, null);
+        }
+        synchronized (bitmapLock) {
+            if (getCached(artKey, size) != null) {
+                return new Request(null, null, null);
+            }
+        }
+
+        // Keeps the task from being dropped as unwanted
+        return enqueue(context, albumId, filePath, size, null, null, true);
+    }
+
+    private static Request enqueue(Context context, long albumId, String filePath, ArtSize size,
+                                   ImageView view, ArtCallback callback, boolean prefetch) {
+        synchronized (inFlight) {
+            DecodeTask task = inFlight.get(sizedKey(artKey(albumId, filePath), size));
+            boolean isNew = task == null;
+            if (isNew) {
+                task = new DecodeTask(context.getApplicationContext(), albumId, filePath, size);
+                task.prefetch = prefetch;
+                inFlight.put(task.key, task);
+            } else if (task.prefetch && !prefetch) {
+                // Wanted now; move it ahead of the other prefetches
+                task.prefetch = false;
+                if (decoder.remove(task)) {
+                    decoder.execute(task);
+                }
+            }
+            Request request = new Request(task, view, callback);
+            task.targets.add(request);
+            if (isNew) {
+                decoder.execute(task);
+            }
+            return request;
+        }
+    }
+
+    public static void cancel(ImageView imageView) {
+        if (imageView != null && imageView.getTag() instanceof Request) {
+            ((Request) imageView.getTag()).cancel();
+            imageView.setTag(null);
+        }
+    }
+
+    /** Forgets which albums had no art, so new art is looked for again. */
+    public static void onLibraryChanged() {
+        noArt.evictAll();
+    }
+
+    private static void deliver(Bitmap bitmap, List<Request> requests) {
+        for (Request request : requests) {
+            if (request.callback != null) {
+                if (request.cancelled) continue;
+                if (bitmap != null) {
+                    synchronized (bitmapLock) {
+                        handedOut.add(bitmap);
+                    }
+                }
+                request.callback.onArtLoaded(bitmap);
+                continue;
+            }
+
+            ImageView view = request.viewRef.get();
+            // The view may have been rebound or recycled meanwhile
+            if (view == null || request.cancelled || view.getTag() != request) continue;
+
+            view.setTag(null);
+            if (bitmap != null && !bitmap.isRecycled()) {
+                synchronized (bitmapLock) {
+                    showBitmap(view, bitmap);
+                }
+            } else {
+                setDefaultArt(view);
+            }
+        }
+    }
+
+    private static void showBitmap(ImageView view, Bitmap bitmap) {
+        view.setImageBitmap(bitmap);
+        shown.put(view, bitmap);
+    }
+
+    private static void acquire(Bitmap bitmap) {
+        synchronized (bitmapLock) {
+            Integer count = inUse.get(bitmap);
+            inUse.put(bitmap, count == null ? 1 : count + 1);
+        }
+    }
+
+    private static void release(Bitmap bitmap) {
+        if (bitmap == null) return;
+        synchronized (bitmapLock) {
+            Integer count = inUse.get(bitmap);
+            if (count == null || count <= 1) {
+                inUse.remove(bitmap);
+            } else {
+                inUse.put(bitmap, count - 1);
+            }
+        }
+    }
+
+    // Bitmaps still shown or in use are left to the GC rather than pooled
+    private static void recycle(Bitmap bitmap) {
+        synchronized (bitmapLock) {
+            if (inUse.containsKey(bitmap) || handedOut.contains(bitmap) || shown.containsValue(bitmap)) {
+                return;
+            }
+            bitmapPool.put(bitmap);
         }
+    }
+
+    private static String artKey(long albumId, String filePath) {
+        return albumId > 0 ? "album:" + albumId : filePath;
+    }
 
-        imageView.setTag(filePath);
+    private static String sizedKey(String key, ArtSize size) {
+        return key + "@" + size.name();
+    }
 
-        Bitmap cached = memoryCache.get(filePath);
-        if (cached != null && !cached.isRecycled()) {
-            imageView.setImageBitmap(cached);
-            return;
+    // Call with bitmapLock held
+    private static Bitmap getCached(String artKey, ArtSize size) {
+        String hash = artHashes.get(sizedKey(artKey, size));
+        Bitmap bitmap = hash != null ? memoryCache.get(sizedKey(hash, size)) : null;
+        return bitmap != null && !bitmap.isRecycled() ? bitmap : null;
+    }
+
+    private static Bitmap acquireCached(String artKey, ArtSize size) {
+        synchronized (bitmapLock) {
+            Bitmap bitmap = getCached(artKey, size);
+            if (bitmap != null) acquire(bitmap);
+            return bitmap;
         }
+    }
 
-        new Thread(() -> {
-            Bitmap bitmap = extractAlbumArt(filePath);
-            WeakReference<ImageView> viewRef = new WeakReference<>(imageView);
+    // Memory, disk, MediaStore, folder cover, then the file itself, cheapest first
+    private static Bitmap loadBitmap(Context context, long albumId, String artKey, ArtSize size,
+                                     String filePath, DecodeTask task) {
+        ArtSize[] sizes = ArtSize.values();
+        Bitmap bitmap = null;
+        for (int i = size.ordinal() + 1; i < sizes.length && bitmap == null; i++) {
+            Bitmap larger = acquireCached(artKey, sizes[i]);
+            if (larger != null) {
+                String hash = artHashes.get(sizedKey(artKey, sizes[i]));
+                bitmap = scaleDown(larger, size);
+                release(larger);
+                if (bitmap != null) {
+                    acquire(bitmap);
+                    remember(artKey, size, hash, bitmap);
+                }
+            }
+        }
 
-            imageView.post(() -> {
-                ImageView view = viewRef.get();
-                if (view != null && filePath.equals(view.getTag())) {
-                    if (bitmap != null && !bitmap.isRecycled()) {
-                        view.setImageBitmap(bitmap);
-                    } else {
-                        setDefaultArt(view);
+        ArtDiskCache diskCache = context != null ? ArtDiskCache.getInstance(context) : null;
+        String sourcePath = artSourcePath(context, albumId, filePath);
+        long version = diskCache != null ? artVersion(sourcePath) : 0;
+        if (bitmap == null && diskCache != null) {
+            String diskKey = diskKey(artKey, version, size);
+            byte[] thumbnail = diskKey != null ? diskCache.get(diskKey) : null;
+            if (thumbnail != null) {
+                return share(artKey, size, thumbnail, task);
+            }
+            for (int i = size.ordinal() + 1; i < sizes.length && bitmap == null; i++) {
+                String largerKey = diskKey(artKey, version, sizes[i]);
+                thumbnail = largerKey != null ? diskCache.get(largerKey) : null;
+                if (thumbnail != null) {
+                    bitmap = share(artKey, size, thumbnail, task);
+                }
+            }
+        }
+
+        if (bitmap == null) {
+            String noArtKey = noArtKey(artKey, sourcePath, version);
+            if (diskCache != null && noArtKey != null && diskCache.get(noArtKey) != null) {
+                noArt.put(artKey, true);
+                return null;
+            }
+            if (task.abandonIfCancelled()) return null;
+
+            bitmap = loadMediaStoreThumbnail(context, albumId, size);
+            if (bitmap != null) {
+                // Not hashed, so not shared with other albums with the same cover
+                acquire(bitmap);
+                remember(artKey, size, artKey, bitmap);
+            } else {
+                byte[] imageData = readFolderCover(sourcePath);
+                if (imageData == null) {
+                    imageData = extractAlbumArt(sourcePath);
+                }
+                if (imageData == null) {
+                    noArt.put(artKey, true);
+                    if (diskCache != null && noArtKey != null) {
+                        diskCache.putEmpty(noArtKey);
                     }
+                    return null;
+                }
+                bitmap = share(artKey, size, imageData, task);
+            }
+        }
+
+        String diskKey = diskKey(artKey, version, size);
+        if (bitmap != null && diskCache != null && diskKey != null) {
+            Bitmap thumbnail = bitmap;
+            acquire(thumbnail);
+            diskWriter.execute(() -> {
+                try {
+                    diskCache.put(diskKey, thumbnail);
+                } finally {
+                    release(thumbnail);
                 }
             });
-        }).start();
+        }
+        return bitmap;
+    }
+
+    // Decodes only if no other album with the same image bytes has it in memory
+    private static Bitmap share(String artKey, ArtSize size, byte[] imageData, DecodeTask task) {
+        String hash = ArtDiskCache.hash(imageData);
+        Bitmap bitmap;
+        synchronized (bitmapLock) {
+            bitmap = memoryCache.get(sizedKey(hash, size));
+            if (bitmap != null && !bitmap.isRecycled()) {
+                acquire(bitmap);
+            } else {
+                bitmap = null;
+            }
+        }
+        if (bitmap == null) {
+            if (task.abandonIfCancelled()) return null;
+            bitmap = decode(imageData, size);
+            if (bitmap == null) return null;
+            acquire(bitmap);
+        }
+        remember(artKey, size, hash, bitmap);
+        return bitmap;
     }
 
-    private static Bitmap extractAlbumArt(String filePath) {
+    private static void remember(String artKey, ArtSize size, String hash, Bitmap bitmap) {
+        memoryCache.put(sizedKey(hash, size), bitmap);
+        artHashes.put(sizedKey(artKey, size), hash);
+    }
+
+    private static String diskKey(String artKey, long version, ArtSize size) {
+        return version != 0 ? artKey + "|" + version + "|" + size.pixels : null;
+    }
+
+    private static String noArtKey(String artKey, String filePath, long version) {
+        return version != 0 ? artKey + "|" + filePath + "|" + version + "|none" : null;
+    }
+
+    // The album's first track, so every track shares one disk entry
+    private static String artSourcePath(Context context, long albumId, String filePath) {
+        if (context == null || albumId <= 0) return filePath;
+        Album album = LibraryRepository.getInstance(context).getLibraryIndex().getAlbum(albumId);
+        String path = album != null ? album.getFirstSongPath() : null;
+        return path != null ? path : filePath;
+    }
+
+    // Folder cover's modification time if there is one, else the audio file's
+    private static long artVersion(String filePath) {
+        File file = new File(filePath);
+        String cover = folderCover(file.getParentFile());
+        long modified = cover != null ? new File(cover).lastModified() : 0;
+        return modified != 0 ? modified : file.lastModified();
+    }
+
+    private static Bitmap loadMediaStoreThumbnail(Context context, long albumId, ArtSize size) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q || context == null || albumId <= 0
+                || size == ArtSize.PLAYER) {
+            return null;
+        }
+
+        Uri uri = ContentUris.withAppendedId(MediaStore.Audio.Albums.EXTERNAL_CONTENT_URI, albumId);
+        Bitmap thumbnail;
+        try {
+            thumbnail = context.getContentResolver().loadThumbnail(uri, new Size(size.pixels, size.pixels), null);
+        } catch (IOException e) {
+            // The album has no art
+            return null;
+        } catch (SecurityException | IllegalArgumentException | IllegalStateException e) {
+            Log.w(TAG, "Error loading MediaStore thumbnail for album " + albumId + ": " + e.getMessage());
+            return null;
+        }
+
+        // Software and mutable so it can be written to disk and pooled
+        Bitmap bitmap = thumbnail.copy(Bitmap.Config.RGB_565, true);
+        if (bitmap == null || Math.max(bitmap.getWidth(), bitmap.getHeight()) <= size.pixels) {
+            return bitmap;
+        }
+        return scaleDown(bitmap, size);
+    }
+
+    // Finds nothing on Android 13+ without permission to read images
+    private static byte[] readFolderCover(String filePath) {
+        String cover = folderCover(new File(filePath).getParentFile());
+        if (cover == null) return null;
+
+        try (RandomAccessFile in = new RandomAccessFile(cover, "r")) {
+            long length = in.length();
+            if (length == 0 || length > MAX_COVER_BYTES) return null;
+            byte[] data = new byte[(int) length];
+            in.readFully(data);
+            return data;
+        } catch (IOException e) {
+            Log.w(TAG, "Error reading " + cover + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static String folderCover(File directory) {
+        if (directory == null) return null;
+
+        String key = directory.getPath() + "|" + directory.lastModified();
+        String cover = folderCovers.get(key);
+        if (cover == null) {
+            cover = "";
+            int bestRank = Integer.MAX_VALUE;
+            String[] names = directory.list();
+            if (names != null) {
+                for (String name : names) {
+                    int rank = coverRank(name);
+                    if (rank < bestRank) {
+                        bestRank = rank;
+                        cover = new File(directory, name).getPath();
+                    }
+                }
+            }
+            folderCovers.put(key, cover);
+        }
+        return cover.isEmpty() ? null : cover;
+    }
+
+    private static int coverRank(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        int dot = name.lastIndexOf('.');
+        if (dot < 0 || !COVER_EXTENSIONS.contains(name.substring(dot))) return Integer.MAX_VALUE;
+        int rank = COVER_NAMES.indexOf(name.substring(0, dot));
+        return rank >= 0 ? rank : Integer.MAX_VALUE;
+    }
+
+    private static byte[] extractAlbumArt(String filePath) {
+        File file = new File(filePath);
+        if (!file.exists()) return null;
+
         try {
-            File file = new File(filePath);
-            if (!file.exists()) return null;
+            return EmbeddedArtReader.read(file);
+        } catch (EmbeddedArtReader.UnsupportedException e) {
+            // Expected for other formats
+        } catch (IOException e) {
+            Log.w(TAG, "Falling back to full tag parse for " + filePath + ": " + e.getMessage());
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error reading embedded art from " + filePath, e);
+            return null;
+        }
 
+        try {
             AudioFile audioFile = AudioFileIO.read(file);
             Tag tag = audioFile.getTag();
 
@@ -74,19 +649,7 @@ public class AlbumArtLoader {
                 if (artwork != null) {
                     byte[] imageData = artwork.getBinaryData();
                     if (imageData != null && imageData.length > 0) {
-                        BitmapFactory.Options options = new BitmapFactory.Options();
-                        options.inJustDecodeBounds = true;
-                        BitmapFactory.decodeByteArray(imageData, 0, imageData.length, options);
-
-                        options.inSampleSize = calculateInSampleSize(options, MAX_IMAGE_SIZE, MAX_IMAGE_SIZE);
-                        options.inJustDecodeBounds = false;
-                        options.inPreferredConfig = Bitmap.Config.RGB_565;
-
-                        Bitmap bitmap = BitmapFactory.decodeByteArray(imageData, 0, imageData.length, options);
-                        if (bitmap != null) {
-                            memoryCache.put(filePath, bitmap);
-                            return bitmap;
-                        }
+                        return imageData;
                     }
                 }
             }
@@ -96,15 +659,49 @@ public class AlbumArtLoader {
         return null;
     }
 
-    public static Bitmap getAlbumArt(Context context, String filePath) {
-        if (filePath == null) return null;
+    private static Bitmap decode(byte[] imageData, ArtSize size) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(imageData, 0, imageData.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
 
-        Bitmap cached = memoryCache.get(filePath);
-        if (cached != null && !cached.isRecycled()) {
-            return cached;
+        options.inSampleSize = calculateInSampleSize(options, size.pixels, size.pixels);
+        int width = (options.outWidth + options.inSampleSize - 1) / options.inSampleSize;
+        int height = (options.outHeight + options.inSampleSize - 1) / options.inSampleSize;
+        int sampled = Math.max(width, height);
+        if (sampled > size.pixels) {
+            options.inScaled = true;
+            options.inDensity = sampled;
+            options.inTargetDensity = size.pixels;
+            width = (int) (width * (float) size.pixels / sampled + 0.5f);
+            height = (int) (height * (float) size.pixels / sampled + 0.5f);
         }
+        options.inJustDecodeBounds = false;
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        options.inMutable = true;
+        options.inBitmap = bitmapPool.get(width * height * 2);
 
-        return extractAlbumArt(filePath);
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeByteArray(imageData, 0, imageData.length, options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap didn't fit after all
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeByteArray(imageData, 0, imageData.length, options);
+        }
+        if (bitmap != null) {
+            // Views shouldn't scale it again
+            bitmap.setDensity(Bitmap.DENSITY_NONE);
+        }
+        return bitmap;
+    }
+
+    private static Bitmap scaleDown(Bitmap source, ArtSize size) {
+        int longest = Math.max(source.getWidth(), source.getHeight());
+        if (longest <= size.pixels) return source.copy(source.getConfig(), true);
+        float scale = (float) size.pixels / longest;
+        return Bitmap.createScaledBitmap(source, Math.max(1, Math.round(source.getWidth() * scale)),
+                Math.max(1, Math.round(source.getHeight() * scale)), true);
     }
 
     private static int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
@@ -126,11 +723,27 @@ public class AlbumArtLoader {
 
     private static void setDefaultArt(ImageView imageView) {
         imageView.setImageResource(R.drawable.default_album_art);
+        synchronized (bitmapLock) {
+            shown.remove(imageView);
+        }
     }
 
-    public static void clearCache() {
-        if (memoryCache != null) {
-            memoryCache.evictAll();
+    static final MemoryManager.Trimmable trimmable = new MemoryManager.Trimmable() {
+        @Override
+        public long getSize() {
+            return memoryCache.size() * 1024L + bitmapPool.size();
         }
-    }
+
+        @Override
+        public long getMaxSize() {
+            return memoryCache.maxSize() * 1024L + bitmapPool.maxSize();
+        }
+
+        @Override
+        public void trimToSize(long maxBytes) {
+            double keep = Math.min(1, (double) maxBytes / getMaxSize());
+            memoryCache.trimToSize((int) (memoryCache.maxSize() * keep));
+            bitmapPool.trimToSize((long) (bitmapPool.maxSize() * keep));
+        }
+    };
 }
\ No newline at end of file
@@ -14,15 +14,20 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.google.android.material.appbar.MaterialToolbar;
 import java.util.List;
 
-public class AlbumDetailActivity extends AppCompatActivity {
+public class AlbumDetailActivity extends AppCompatActivity implements LibraryRepository.LibraryListener {
     private MusicService musicService;
     private boolean serviceBound = false;
     private RecyclerView recyclerView;
+    private ArtPrefetcher artPrefetcher;
     private TextView txtSongCount;
     private ImageView imgAlbumArt; // Moved to class level for easier access
+    private AlbumArtLoader.Request artRequest;
     private long albumId;
     private String albumName, artistName;
+    private String categoryType;
     private List<Song> albumSongs;
+    private SongAdapter songAdapter;
+    private LibraryRepository libraryRepository;
 
     private ServiceConnection serviceConnection = new ServiceConnection() {
         @Override
@@ -46,14 +51,25 @@ public class AlbumDetailActivity extends AppCompatActivity {
         // Order matters!
         getIntentData();    // 1. Get IDs from Intent
         initViews();        // 2. Link XML IDs to Java objects (findViewById)
-        loadAlbumSongs();   // 3. Load data and fill the views now that they aren't null
+        observeLibrary();   // 3. Fill the views from the shared library once it is loaded
         bindMusicService(); // 4. Connect to service
     }
 
+    private void observeLibrary() {
+        libraryRepository = LibraryRepository.getInstance(this);
+        // Delivers the in-memory library immediately if a scan already finished
+        libraryRepository.addListener(this);
+        if (!libraryRepository.isLoaded()) {
+            libraryRepository.refresh();
+        }
+    }
+
     private void getIntentData() {
         albumId = getIntent().getLongExtra("album_id", -1);
         albumName = getIntent().getStringExtra("album_name");
         artistName = getIntent().getStringExtra("artist_name");
+        // Artist and genre pages reuse this screen with a category type and name instead of an id
+        categoryType = getIntent().getStringExtra("category_type");
     }
 
     private void initViews() {
@@ -75,11 +91,20 @@ public class AlbumDetailActivity extends AppCompatActivity {
         txtArtist.setText(artistName);
 
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        artPrefetcher = ArtPrefetcher.attach(recyclerView);
+        songAdapter = new SongAdapter(null, this::onSongClick);
+        recyclerView.setAdapter(songAdapter);
     }
 
     private void loadAlbumSongs() {
-        MusicLoader loader = new MusicLoader(this);
-        albumSongs = loader.loadSongsByAlbum(albumId);
+        LibraryIndex index = libraryRepository.getLibraryIndex();
+        if ("artist".equals(categoryType)) {
+            albumSongs = index.getArtistSongs(albumName);
+        } else if ("genre".equals(categoryType)) {
+            albumSongs = index.getGenreSongs(albumName);
+        } else {
+            albumSongs = index.getSongs(albumId);
+        }
 
         // Add safety check: Ensure the list was loaded and views are ready
         if (albumSongs != null) {
@@ -87,20 +112,24 @@ public class AlbumDetailActivity extends AppCompatActivity {
 
             if (!albumSongs.isEmpty()) {
                 // Now it's safe to use albumSongs because it was just initialized above
-                AlbumArtLoader.loadAlbumArt(this, albumSongs.get(0).getPath(), imgAlbumArt);
+                artRequest = AlbumArtLoader.loadAlbumArt(this, albumSongs.get(0).getAlbumId(),
+                        albumSongs.get(0).getPath(), AlbumArtLoader.ArtSize.PLAYER, imgAlbumArt);
             }
 
-            SongAdapter songAdapter = new SongAdapter(albumSongs, this::onSongClick);
-            recyclerView.setAdapter(songAdapter);
+            songAdapter.updateSongs(albumSongs);
         } else {
             txtSongCount.setText("0 songs");
         }
     }
 
+    @Override
+    public void onLibraryChanged(LibraryRepository repository) {
+        loadAlbumSongs();
+    }
+
     private void onSongClick(Song song, int position) {
         if (musicService != null && albumSongs != null) {
-            musicService.setSongList(albumSongs);
-            musicService.playSong(position);
+            musicService.playSongs(albumSongs, position);
         }
     }
 
@@ -112,6 +141,13 @@ public class AlbumDetailActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        libraryRepository.removeListener(this);
+        if (artRequest != null) {
+            artRequest.cancel();
+        }
+        // Recycles the rows, which cancels their pending art
+        recyclerView.setAdapter(null);
+        artPrefetcher.cancel();
         if (serviceBound) {
             unbindService(serviceConnection);
         }
@@ -0,0 +1,269 @@
+package com.uxp.musicq;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Album art thumbnails kept as JPEG files, least recently used evicted first. */
+class ArtDiskCache {
+    private static final String TAG = "ArtDiskCache";
+    private static final String DIR_NAME = "album_art";
+    private static final String JOURNAL = "journal";
+    private static final long MAX_BYTES = 32L * 1024 * 1024;
+    private static final int JPEG_QUALITY = 90;
+    private static final int MIN_REBUILD_OPS = 2000;
+    private static ArtDiskCache instance;
+
+    private final File directory;
+    private final File journalFile;
+    // File name -> size, least recently used first
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(0, 0.75f, true);
+    private long totalBytes;
+    private Writer journal;
+    private int redundantOps;
+    private int tmpCounter;
+
+    private ArtDiskCache(Context context) {
+        directory = new File(context.getCacheDir(), DIR_NAME);
+        journalFile = new File(directory, JOURNAL);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "Could not create " + directory);
+        }
+        readJournal();
+        deleteUntracked();
+        rebuildJournal();
+    }
+
+    static synchronized ArtDiskCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new ArtDiskCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    byte[] get(String key) {
+        File file;
+        synchronized (this) {
+            String name = fileName(key);
+            if (entries.get(name) == null) return null;
+
+            file = new File(directory, name);
+            if (!file.exists()) {
+                remove(name);
+                return null;
+            }
+            appendJournal("READ " + name, false);
+        }
+
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            byte[] data = new byte[(int) in.length()];
+            in.readFully(data);
+            return data;
+        } catch (IOException e) {
+            // Evicted by another thread between the lookup and the read
+            return null;
+        }
+    }
+
+    void put(String key, Bitmap bitmap) {
+        String name = fileName(key);
+        File tmp;
+        synchronized (this) {
+            tmp = new File(directory, name + "." + (tmpCounter++) + ".tmp");
+        }
+
+        // Encode outside the lock
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out)) {
+                throw new IOException("Could not encode " + key);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing thumbnail: " + e.getMessage());
+            tmp.delete();
+            return;
+        }
+
+        synchronized (this) {
+            File file = new File(directory, name);
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                return;
+            }
+            Long previous = entries.put(name, file.length());
+            if (previous != null) {
+                totalBytes -= previous;
+                redundantOps++;
+            }
+            totalBytes += file.length();
+            appendJournal("PUT " + name + " " + file.length(), true);
+            trimToSize(MAX_BYTES);
+        }
+    }
+
+    // get() then returns an empty array
+    synchronized void putEmpty(String key) {
+        String name = fileName(key);
+        File file = new File(directory, name);
+        try {
+            new FileOutputStream(file).close();
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing empty entry: " + e.getMessage());
+            return;
+        }
+        Long previous = entries.put(name, 0L);
+        if (previous != null) {
+            totalBytes -= previous;
+            redundantOps++;
+        }
+        appendJournal("PUT " + name + " 0", true);
+    }
+
+    synchronized long size() {
+        return totalBytes;
+    }
+
+    synchronized void trimToSize(long maxBytes) {
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            eldest.remove();
+            totalBytes -= entry.getValue();
+            new File(directory, entry.getKey()).delete();
+            appendJournal("REMOVE " + entry.getKey(), false);
+        }
+        flushJournal();
+    }
+
+    private void remove(String name) {
+        Long size = entries.remove(name);
+        if (size != null) {
+            totalBytes -= size;
+            new File(directory, name).delete();
+            appendJournal("REMOVE " + name, true);
+        }
+    }
+
+    private void readJournal() {
+        if (!journalFile.exists()) return;
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(journalFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ");
+                if (parts.length == 3 && parts[0].equals("PUT")) {
+                    Long previous = entries.put(parts[1], Long.parseLong(parts[2]));
+                    if (previous != null) totalBytes -= previous;
+                    totalBytes += Long.parseLong(parts[2]);
+                } else if (parts.length == 2 && parts[0].equals("READ")) {
+                    entries.get(parts[1]);
+                } else if (parts.length == 2 && parts[0].equals("REMOVE")) {
+                    Long size = entries.remove(parts[1]);
+                    if (size != null) totalBytes -= size;
+                }
+                // Anything else is a line cut short by a crash
+            }
+        } catch (IOException | NumberFormatException e) {
+            Log.e(TAG, "Error reading journal, starting over: " + e.getMessage());
+            entries.clear();
+            totalBytes = 0;
+        }
+    }
+
+    // Leftovers from a crash mid-write, or everything after a lost journal
+    private void deleteUntracked() {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (!file.getName().equals(JOURNAL) && !entries.containsKey(file.getName())) {
+                file.delete();
+            }
+        }
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            if (!new File(directory, entry.getKey()).exists()) {
+                totalBytes -= entry.getValue();
+                it.remove();
+            }
+        }
+    }
+
+    private void rebuildJournal() {
+        try {
+            if (journal != null) journal.close();
+            File tmp = new File(directory, JOURNAL + ".tmp");
+            try (Writer writer = new BufferedWriter(new FileWriter(tmp))) {
+                for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                    writer.write("PUT " + entry.getKey() + " " + entry.getValue() + "\n");
+                }
+            }
+            if (!tmp.renameTo(journalFile)) {
+                throw new IOException("Could not replace journal");
+            }
+            journal = new BufferedWriter(new FileWriter(journalFile, true));
+            redundantOps = 0;
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing journal: " + e.getMessage());
+            journal = null;
+        }
+    }
+
+    private void appendJournal(String line, boolean flush) {
+        if (journal == null) return;
+        try {
+            journal.write(line);
+            journal.write('\n');
+            if (flush) journal.flush();
+        } catch (IOException e) {
+            Log.e(TAG, "Error appending to journal: " + e.getMessage());
+        }
+        if (!line.startsWith("PUT")) {
+            redundantOps++;
+        }
+        if (redundantOps >= MIN_REBUILD_OPS && redundantOps >= entries.size()) {
+            rebuildJournal();
+        }
+    }
+
+    private void flushJournal() {
+        if (journal == null) return;
+        try {
+            journal.flush();
+        } catch (IOException e) {
+            Log.e(TAG, "Error flushing journal: " + e.getMessage());
+        }
+    }
+
+    private static String fileName(String key) {
+        return hash(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String hash(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+            StringBuilder name = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.uxp.musicq;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.SparseArray;
+import android.view.View;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Decodes art for the rows about to scroll into a vertical list, so they
+ * don't show the default art first. The window of rows follows the scroll
+ * direction and grows with the scroll speed. Works with whichever adapter
+ * the list currently has, as long as it's an {@link ArtSource}.
+ */
+public class ArtPrefetcher extends RecyclerView.OnScrollListener {
+    private static final int MIN_AHEAD = 4;
+    private static final int MAX_AHEAD = 24;
+    // Rows that would scroll into view within this long at the current speed are prefetched
+    private static final long LOOKAHEAD_MS = 500;
+    // A longer gap between scroll events starts a new gesture
+    private static final long GESTURE_GAP_MS = 100;
+
+    private final Context context;
+    // Adapter position -> its prefetch
+    private final SparseArray<AlbumArtLoader.Request> pending = new SparseArray<>();
+    private RecyclerView.Adapter<?> adapter;
+    private long lastScrollTime;
+    // Pixels per millisecond, smoothed over the last few scroll events
+    private float velocity;
+    private int windowStart = -1;
+    private int windowEnd = -1;
+
+    /**
+     * An adapter whose rows show album art.
+     */
+    public interface ArtSource {
+        /** The album the row's art belongs to, or -1 if not known. */
+        long getArtAlbumId(int position);
+
+        /** A file to read the row's art from, or null if it has none. */
+        String getArtPath(int position);
+    }
+
+    private ArtPrefetcher(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static ArtPrefetcher attach(RecyclerView recyclerView) {
+        ArtPrefetcher prefetcher = new ArtPrefetcher(recyclerView.getContext());
+        recyclerView.addOnScrollListener(prefetcher);
+        return prefetcher;
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        // Layout passes report no movement
+        if (dy == 0) return;
+
+        if (recyclerView.getAdapter() != adapter) {
+            // Positions refer to the old adapter's rows
+            cancel();
+            adapter = recyclerView.getAdapter();
+        }
+        if (!(adapter instanceof ArtSource) || !(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) {
+            return;
+        }
+
+        long now = SystemClock.uptimeMillis();
+        long elapsed = now - lastScrollTime;
+        lastScrollTime = now;
+        if (elapsed > GESTURE_GAP_MS) {
+            velocity = 0;
+        } else if (elapsed > 0) {
+            velocity = (velocity + Math.abs(dy) / (float) elapsed) / 2;
+        }
+
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) return;
+
+        View row = recyclerView.getChildAt(0);
+        int rowHeight = row != null ? Math.max(1, row.getHeight()) : 1;
+        int ahead = (int) Math.max(MIN_AHEAD, Math.min(MAX_AHEAD, velocity * LOOKAHEAD_MS / rowHeight));
+
+        int start;
+        int end;
+        if (dy > 0) {
+            start = last + 1;
+            end = Math.min(adapter.getItemCount(), start + ahead);
+        } else {
+            end = first;
+            start = Math.max(0, end - ahead);
+        }
+        if (start == windowStart && end == windowEnd) return;
+        windowStart = start;
+        windowEnd = end;
+
+        // Rows that scrolled into view have their own load by now, which keeps the decode going
+        for (int i = pending.size() - 1; i >= 0; i--) {
+            int position = pending.keyAt(i);
+            if (position < start || position >= end) {
+                pending.valueAt(i).cancel();
+                pending.removeAt(i);
+            }
+        }
+
+        // Prefetches are decoded in the order they're made, so nearest first
+        ArtSource source = (ArtSource) adapter;
+        for (int n = 0; n < end - start; n++) {
+            int position = dy > 0 ? start + n : end - 1 - n;
+            if (pending.get(position) != null) continue;
+            String path = source.getArtPath(position);
+            if (path == null) continue;
+            pending.put(position, AlbumArtLoader.prefetch(context, source.getArtAlbumId(position), path,
+                    AlbumArtLoader.ArtSize.LIST));
+        }
+    }
+
+    /**
+     * Drops the prefetches not yet decoded; call when the list goes away.
+     */
+    public void cancel() {
+        for (int i = 0; i < pending.size(); i++) {
+            pending.valueAt(i).cancel();
+        }
+        pending.clear();
+        windowStart = -1;
+        windowEnd = -1;
+    }
+}
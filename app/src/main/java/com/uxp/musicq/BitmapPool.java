@@ -0,0 +1,102 @@
+package com.uxp.musicq;
+
+import android.graphics.Bitmap;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Bitmaps no longer cached or shown, kept for BitmapFactory to decode into
+ * ({@code inBitmap}) so a long scroll doesn't allocate a new bitmap per
+ * decode. Bitmaps are bucketed into size classes, four per power of two of
+ * their allocation size; the oldest go first once the pool is over budget.
+ */
+class BitmapPool {
+    private final long maxBytes;
+    private long bytes;
+    // Size class -> bitmaps whose allocation rounds up to it, newest first
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> classes = new TreeMap<>();
+    private final LinkedHashSet<Bitmap> byAge = new LinkedHashSet<>();
+
+    BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || !bitmap.isMutable() || bitmap.isRecycled() || byAge.contains(bitmap)) return;
+
+        int size = bitmap.getAllocationByteCount();
+        if (size > maxBytes / 4) return;
+
+        ArrayDeque<Bitmap> bucket = classes.get(sizeClass(size));
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            classes.put(sizeClass(size), bucket);
+        }
+        bucket.push(bitmap);
+        byAge.add(bitmap);
+        bytes += size;
+        trimToSize(maxBytes);
+    }
+
+    /**
+     * Takes a bitmap with room for at least {@code neededBytes}, but not
+     * wastefully more, out of the pool; null if there is none.
+     */
+    synchronized Bitmap get(int neededBytes) {
+        for (Map.Entry<Integer, ArrayDeque<Bitmap>> entry
+                : classes.tailMap(sizeClass(neededBytes), true).entrySet()) {
+            if (entry.getKey() / 2 > neededBytes) break;
+
+            Iterator<Bitmap> it = entry.getValue().iterator();
+            while (it.hasNext()) {
+                Bitmap bitmap = it.next();
+                // Its class may have rounded it up past what it actually holds
+                if (bitmap.getAllocationByteCount() < neededBytes) continue;
+
+                it.remove();
+                if (entry.getValue().isEmpty()) {
+                    classes.remove(entry.getKey());
+                }
+                byAge.remove(bitmap);
+                bytes -= bitmap.getAllocationByteCount();
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    synchronized long size() {
+        return bytes;
+    }
+
+    long maxSize() {
+        return maxBytes;
+    }
+
+    synchronized void trimToSize(long limit) {
+        Iterator<Bitmap> oldest = byAge.iterator();
+        while (bytes > limit && oldest.hasNext()) {
+            Bitmap bitmap = oldest.next();
+            oldest.remove();
+            int size = bitmap.getAllocationByteCount();
+            ArrayDeque<Bitmap> bucket = classes.get(sizeClass(size));
+            bucket.remove(bitmap);
+            if (bucket.isEmpty()) {
+                classes.remove(sizeClass(size));
+            }
+            bytes -= size;
+        }
+    }
+
+    synchronized void clear() {
+        trimToSize(0);
+    }
+
+    private static int sizeClass(int bytes) {
+        int step = Math.max(1, Integer.highestOneBit(bytes) / 4);
+        return (bytes + step - 1) / step * step;
+    }
+}
@@ -0,0 +1,70 @@
+package com.uxp.musicq;
+
+/**
+ * An artist or genre in the browse views, with totals over its songs.
+ */
+public class Category {
+    private String name;
+    private int songCount;
+    private int albumCount;
+    private long totalDuration;
+    private String artPath;
+    private long artAlbumId = -1;
+
+    public Category(String name, int songCount, int albumCount, long totalDuration) {
+        this.name = name;
+        this.songCount = songCount;
+        this.albumCount = albumCount;
+        this.totalDuration = totalDuration;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSongCount() {
+        return songCount;
+    }
+
+    public int getAlbumCount() {
+        return albumCount;
+    }
+
+    public long getTotalDuration() {
+        return totalDuration;
+    }
+
+    /**
+     * Path of the song whose art stands for the whole category.
+     */
+    public String getArtPath() {
+        return artPath;
+    }
+
+    public void setArtPath(String path) {
+        this.artPath = path;
+    }
+
+    /**
+     * Album of the song at {@link #getArtPath()}.
+     */
+    public long getArtAlbumId() {
+        return artAlbumId;
+    }
+
+    public void setArtAlbumId(long albumId) {
+        this.artAlbumId = albumId;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        return name.equals(((Category) obj).name);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+}
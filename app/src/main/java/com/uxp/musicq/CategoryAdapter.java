@@ -0,0 +1,114 @@
+package com.uxp.musicq;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lists artists or genres, reusing the album row layout.
+ */
+public class CategoryAdapter extends RecyclerView.Adapter<CategoryAdapter.CategoryViewHolder>
+        implements ArtPrefetcher.ArtSource {
+    private List<Category> categories;
+    private OnCategoryClickListener listener;
+
+    public interface OnCategoryClickListener {
+        void onCategoryClick(Category category, int position);
+    }
+
+    public CategoryAdapter(List<Category> categories, OnCategoryClickListener listener) {
+        this.categories = categories != null ? categories : new ArrayList<>();
+        this.listener = listener;
+    }
+
+    @NonNull
+    @Override
+    public CategoryViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_album, parent, false);
+        return new CategoryViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull CategoryViewHolder holder, int position) {
+        Category category = categories.get(position);
+        holder.bind(category, position);
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull CategoryViewHolder holder) {
+        holder.cancelArt();
+    }
+
+    @Override
+    public int getItemCount() {
+        return categories.size();
+    }
+
+    @Override
+    public long getArtAlbumId(int position) {
+        return categories.get(position).getArtAlbumId();
+    }
+
+    @Override
+    public String getArtPath(int position) {
+        return categories.get(position).getArtPath();
+    }
+
+    public void updateCategories(List<Category> newCategories) {
+        this.categories = newCategories != null ? newCategories : new ArrayList<>();
+        notifyDataSetChanged();
+    }
+
+    class CategoryViewHolder extends RecyclerView.ViewHolder {
+        private TextView txtName, txtAlbumCount, txtSongCount;
+        private ImageView imgArt;
+        private AlbumArtLoader.Request artRequest;
+
+        public CategoryViewHolder(@NonNull View itemView) {
+            super(itemView);
+            txtName = itemView.findViewById(R.id.txtAlbumName);
+            txtAlbumCount = itemView.findViewById(R.id.txtAlbumArtist);
+            txtSongCount = itemView.findViewById(R.id.txtSongCount);
+            imgArt = itemView.findViewById(R.id.imgAlbumArt);
+        }
+
+        public void bind(Category category, int position) {
+            txtName.setText(category.getName());
+            int albumCount = category.getAlbumCount();
+            txtAlbumCount.setText(albumCount + (albumCount == 1 ? " album" : " albums"));
+            txtSongCount.setText(category.getSongCount() + " songs, "
+                    + formatDuration(category.getTotalDuration()));
+
+            artRequest = AlbumArtLoader.loadAlbumArt(itemView.getContext(), category.getArtAlbumId(),
+                    category.getArtPath(), AlbumArtLoader.ArtSize.LIST, imgArt);
+
+            itemView.setOnClickListener(v -> {
+                if (listener != null) {
+                    listener.onCategoryClick(category, position);
+                }
+            });
+        }
+
+        void cancelArt() {
+            if (artRequest != null) {
+                artRequest.cancel();
+                artRequest = null;
+            }
+        }
+
+        private String formatDuration(long milliseconds) {
+            long minutes = milliseconds / 60000;
+            if (minutes < 60) {
+                return minutes + " min";
+            }
+            return String.format("%d h %d min", minutes / 60, minutes % 60);
+        }
+    }
+}
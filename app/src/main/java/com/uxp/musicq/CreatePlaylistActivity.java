@@ -12,14 +12,16 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
-public class CreatePlaylistActivity extends AppCompatActivity {
+public class CreatePlaylistActivity extends AppCompatActivity implements LibraryRepository.LibraryListener {
     private TextInputEditText edtPlaylistName;
     private Button btnCreatePlaylist;
     private RecyclerView recyclerView;
+    private ArtPrefetcher artPrefetcher;
     private SongSelectionAdapter songAdapter;
     private List<Song> allSongs;
     private List<Song> selectedSongs;
     private XspfPlaylistManager playlistManager;
+    private LibraryRepository libraryRepository;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -47,11 +49,12 @@ public class CreatePlaylistActivity extends AppCompatActivity {
         selectedSongs = new ArrayList<>();
 
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        artPrefetcher = ArtPrefetcher.attach(recyclerView);
     }
 
     private void loadSongs() {
-        MusicLoader loader = new MusicLoader(this);
-        allSongs = loader.loadSongs();
+        libraryRepository = LibraryRepository.getInstance(this);
+        allSongs = libraryRepository.getSongs();
 
         songAdapter = new SongSelectionAdapter(allSongs, (song, isSelected) -> {
             if (isSelected) {
@@ -63,6 +66,17 @@ public class CreatePlaylistActivity extends AppCompatActivity {
         });
 
         recyclerView.setAdapter(songAdapter);
+
+        libraryRepository.addListener(this);
+        if (!libraryRepository.isLoaded()) {
+            libraryRepository.refresh();
+        }
+    }
+
+    @Override
+    public void onLibraryChanged(LibraryRepository repository) {
+        allSongs = repository.getSongs();
+        songAdapter.updateSongs(allSongs);
     }
 
     private void setupListeners() {
@@ -95,4 +109,13 @@ public class CreatePlaylistActivity extends AppCompatActivity {
     private void updateButtonText() {
         btnCreatePlaylist.setText("Create Playlist (" + selectedSongs.size() + " songs)");
     }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        libraryRepository.removeListener(this);
+        // Recycles the rows, which cancels their pending art
+        recyclerView.setAdapter(null);
+        artPrefetcher.cancel();
+    }
 }
@@ -0,0 +1,114 @@
+package com.uxp.musicq;
+
+import android.media.MediaPlayer;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+
+/**
+ * Ramps one player down and another up over the same stretch of time, on
+ * a thread of its own so the steps keep time however busy the main thread
+ * is. Each step sets the volumes the clock says they should have by now,
+ * so a late step catches up rather than stretching the fade. The curves
+ * are equal-power, so the overlap doesn't dip in loudness.
+ */
+class Crossfader {
+    private static final long STEP_MS = 20;
+    // In battery saver mode: fewer wake-ups, coarser steps, same length
+    private static final long SAVER_STEP_MS = 100;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final HandlerThread thread;
+    private final Handler handler;
+    // Guarded by this; the players are only touched while it's the fade in progress
+    private Fade fade;
+
+    Crossfader() {
+        thread = new HandlerThread("Crossfader", Process.THREAD_PRIORITY_AUDIO);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Fades {@code outgoing} out and {@code incoming}, already playing, in
+     * to {@code volume}. {@code onFinished} is run on the main thread when
+     * the fade has run its course, not when it's cancelled.
+     */
+    synchronized void start(MediaPlayer outgoing, MediaPlayer incoming, long durationMs, float volume,
+                            boolean batterySaver, Runnable onFinished) {
+        cancel();
+        fade = new Fade(outgoing, incoming, Math.max(1, durationMs), volume,
+                batterySaver ? SAVER_STEP_MS : STEP_MS, onFinished);
+        handler.post(fade);
+    }
+
+    /**
+     * Stops the fade in progress with the incoming player at its full
+     * volume. Once this returns the players are no longer touched, so
+     * they can be reset or released.
+     */
+    synchronized void cancel() {
+        if (fade == null) return;
+        handler.removeCallbacks(fade);
+        try {
+            fade.incoming.setVolume(fade.volume, fade.volume);
+        } catch (IllegalStateException e) {
+            // Released or reset already
+        }
+        fade = null;
+    }
+
+    void release() {
+        cancel();
+        thread.quitSafely();
+    }
+
+    private final class Fade implements Runnable {
+        final MediaPlayer outgoing;
+        final MediaPlayer incoming;
+        final long durationMs;
+        final float volume;
+        final long stepMs;
+        final Runnable onFinished;
+        final long startTime = SystemClock.uptimeMillis();
+
+        Fade(MediaPlayer outgoing, MediaPlayer incoming, long durationMs, float volume, long stepMs,
+             Runnable onFinished) {
+            this.outgoing = outgoing;
+            this.incoming = incoming;
+            this.durationMs = durationMs;
+            this.volume = volume;
+            this.stepMs = stepMs;
+            this.onFinished = onFinished;
+        }
+
+        @Override
+        public void run() {
+            synchronized (Crossfader.this) {
+                if (fade != this) return;
+
+                float progress = Math.min(1, (SystemClock.uptimeMillis() - startTime) / (float) durationMs);
+                double angle = progress * Math.PI / 2;
+                float in = (float) Math.sin(angle) * volume;
+                float out = (float) Math.cos(angle) * volume;
+                try {
+                    outgoing.setVolume(out, out);
+                } catch (IllegalStateException e) {
+                    // The outgoing player failed; nothing left to fade
+                    progress = 1;
+                    in = volume;
+                }
+                incoming.setVolume(in, in);
+
+                if (progress < 1) {
+                    handler.postDelayed(this, stepMs);
+                } else {
+                    fade = null;
+                    mainHandler.post(onFinished);
+                }
+            }
+        }
+    }
+}
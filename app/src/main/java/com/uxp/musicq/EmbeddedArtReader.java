@@ -0,0 +1,383 @@
+package com.uxp.musicq;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/** Reads embedded cover art from MP3, FLAC and MP4 files without a full tag parse. */
+class EmbeddedArtReader {
+    private static final int MAX_PICTURE_BYTES = 16 * 1024 * 1024;
+    private static final int FRONT_COVER = 3;
+
+    // Another container, or a compressed or encrypted picture frame
+    static class UnsupportedException extends IOException {
+        UnsupportedException(String message) {
+            super(message);
+        }
+    }
+
+    private static class Picture {
+        final int type;
+        final byte[] data;
+
+        Picture(int type, byte[] data) {
+            this.type = type;
+            this.data = data;
+        }
+    }
+
+    private final FileChannel channel;
+    private final long fileSize;
+
+    private EmbeddedArtReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.fileSize = channel.size();
+    }
+
+    /** The front cover, or else the first picture; null if the file has none. */
+    static byte[] read(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            return new EmbeddedArtReader(channel).read();
+        }
+    }
+
+    private byte[] read() throws IOException {
+        ByteBuffer head = readAt(0, (int) Math.min(12, fileSize));
+        if (head.remaining() >= 10 && startsWith(head, 0, "ID3")) {
+            long tagEnd = 10 + synchsafe(head.getInt(6)) + ((head.get(5) & 0x10) != 0 ? 10 : 0);
+            // FLAC files sometimes carry an ID3v2 tag in front of the stream marker
+            if (tagEnd + 4 <= fileSize && startsWith(readAt(tagEnd, 4), 0, "fLaC")) {
+                return readFlac(tagEnd + 4);
+            }
+            return readId3(head);
+        }
+        if (head.remaining() >= 4 && startsWith(head, 0, "fLaC")) {
+            return readFlac(4);
+        }
+        if (head.remaining() >= 8 && startsWith(head, 4, "ftyp")) {
+            return readMp4(0, fileSize, 0);
+        }
+        if (head.remaining() >= 2 && (head.get(0) & 0xff) == 0xff && (head.get(1) & 0xe0) == 0xe0) {
+            // Bare MPEG audio: no ID3v2 tag, so no picture
+            return null;
+        }
+        throw new UnsupportedException("Unknown container");
+    }
+
+    // ID3v2
+
+    private byte[] readId3(ByteBuffer header) throws IOException {
+        int version = header.get(3);
+        int flags = header.get(5);
+        long tagSize = synchsafe(header.getInt(6));
+        if (version < 2 || version > 4) {
+            throw new UnsupportedException("ID3v2." + version);
+        }
+        if (10 + tagSize > fileSize) {
+            throw new IOException("Truncated ID3v2 tag");
+        }
+
+        // v2.2 and v2.3 unsynchronise the whole tag, frame headers included
+        if ((flags & 0x80) != 0 && version < 4) {
+            ByteBuffer tag = unsynchronise(readAt(10, (int) tagSize));
+            return findId3Picture(new BufferSource(tag), version, flags, tag.remaining(), true);
+        }
+        return findId3Picture(new FileSource(10), version, flags, tagSize, (flags & 0x80) != 0);
+    }
+
+    private byte[] findId3Picture(Source tag, int version, int flags, long tagSize,
+                                  boolean unsynchronised) throws IOException {
+        long position = 0;
+        if ((flags & 0x40) != 0 && version >= 3) {
+            int extendedSize = tag.read(0, 4).getInt();
+            position = version == 4 ? synchsafe(extendedSize) : 4 + extendedSize;
+            if (position < 0 || position > tagSize) {
+                throw new IOException("Bad ID3v2 extended header size");
+            }
+        }
+
+        int headerSize = version == 2 ? 6 : 10;
+        Picture first = null;
+        while (position + headerSize <= tagSize) {
+            ByteBuffer frame = tag.read(position, headerSize);
+            if (frame.get(0) == 0) break; // padding
+
+            String id;
+            long size;
+            int formatFlags = 0;
+            if (version == 2) {
+                id = ascii(frame, 0, 3);
+                size = ((frame.get(3) & 0xff) << 16) | ((frame.get(4) & 0xff) << 8) | (frame.get(5) & 0xff);
+            } else {
+                id = ascii(frame, 0, 4);
+                int raw = frame.getInt(4);
+                size = version == 4 ? synchsafe(raw) : raw & 0xffffffffL;
+                formatFlags = frame.get(9) & 0xff;
+            }
+            long bodyStart = position + headerSize;
+            if (size <= 0 || bodyStart + size > tagSize) break;
+
+            if ((id.equals("APIC") || id.equals("PIC")) && size <= MAX_PICTURE_BYTES) {
+                Picture picture = readId3PictureFrame(tag, version, bodyStart, (int) size, formatFlags,
+                        unsynchronised);
+                if (picture != null) {
+                    if (picture.type == FRONT_COVER) return picture.data;
+                    if (first == null) first = picture;
+                }
+            }
+            position = bodyStart + size;
+        }
+        return first != null ? first.data : null;
+    }
+
+    private Picture readId3PictureFrame(Source tag, int version, long start, int size, int formatFlags,
+                                       boolean tagUnsynchronised) throws IOException {
+        boolean unsynchronised = tagUnsynchronised;
+        if (version == 3 && (formatFlags & 0xc0) != 0) {
+            throw new UnsupportedException("Compressed or encrypted ID3v2.3 frame");
+        }
+        if (version == 4) {
+            if ((formatFlags & 0x0c) != 0) {
+                throw new UnsupportedException("Compressed or encrypted ID3v2.4 frame");
+            }
+            if ((formatFlags & 0x40) != 0) { // group id
+                start++;
+                size--;
+            }
+            if ((formatFlags & 0x01) != 0) { // data length indicator
+                start += 4;
+                size -= 4;
+            }
+            unsynchronised |= (formatFlags & 0x02) != 0;
+        }
+        if (size <= 0) return null;
+
+        ByteBuffer body = tag.read(start, size);
+        if (unsynchronised && version == 4) {
+            body = unsynchronise(body);
+        }
+
+        int encoding = body.get(0);
+        int offset = 1;
+        if (version == 2) {
+            offset += 3; // image format, e.g. "JPG"
+        } else {
+            while (offset < body.limit() && body.get(offset) != 0) offset++;
+            offset++; // MIME type and its terminator
+        }
+        if (offset >= body.limit()) return null;
+        int pictureType = body.get(offset++) & 0xff;
+
+        // Description, terminated by one zero byte, or two aligned ones for UTF-16
+        boolean wide = encoding == 1 || encoding == 2;
+        if (wide) {
+            while (offset + 1 < body.limit() && (body.get(offset) != 0 || body.get(offset + 1) != 0)) offset += 2;
+            offset += 2;
+        } else {
+            while (offset < body.limit() && body.get(offset) != 0) offset++;
+            offset++;
+        }
+        if (offset >= body.limit()) return null;
+
+        byte[] image = new byte[body.limit() - offset];
+        body.position(offset);
+        body.get(image);
+        return new Picture(pictureType, image);
+    }
+
+    // FLAC
+
+    private byte[] readFlac(long position) throws IOException {
+        Picture first = null;
+        boolean last = false;
+        while (!last && position + 4 <= fileSize) {
+            ByteBuffer header = readAt(position, 4);
+            last = (header.get(0) & 0x80) != 0;
+            int type = header.get(0) & 0x7f;
+            int length = header.getInt(0) & 0xffffff;
+            long bodyStart = position + 4;
+
+            if (type == 6) {
+                Picture picture = readFlacPicture(bodyStart, length);
+                if (picture != null) {
+                    if (picture.type == FRONT_COVER) return picture.data;
+                    if (first == null) first = picture;
+                }
+            }
+            position = bodyStart + length;
+        }
+        return first != null ? first.data : null;
+    }
+
+    private Picture readFlacPicture(long start, int length) throws IOException {
+        long end = start + length;
+        long position = start;
+        int pictureType = readAt(position, 4).getInt();
+        position += 4;
+        position += 4 + (readAt(position, 4).getInt() & 0xffffffffL); // MIME type
+        position += 4 + (readAt(position, 4).getInt() & 0xffffffffL); // description
+        position += 16; // width, height, depth, colours
+        if (position + 4 > end) return null;
+
+        long dataLength = readAt(position, 4).getInt() & 0xffffffffL;
+        position += 4;
+        if (dataLength == 0 || dataLength > MAX_PICTURE_BYTES || position + dataLength > end) return null;
+        ByteBuffer data = readAt(position, (int) dataLength);
+        byte[] image = new byte[data.remaining()];
+        data.get(image);
+        return new Picture(pictureType, image);
+    }
+
+    // MP4
+
+    // moov/udta/meta/ilst/covr/data, or meta directly under moov
+    private byte[] readMp4(long start, long end, int depth) throws IOException {
+        long position = start;
+        while (position + 8 <= end) {
+            ByteBuffer header = readAt(position, 8);
+            long size = header.getInt(0) & 0xffffffffL;
+            String type = ascii(header, 4, 4);
+            int headerSize = 8;
+            if (size == 1) {
+                size = readAt(position + 8, 8).getLong();
+                headerSize = 16;
+            } else if (size == 0) {
+                size = end - position;
+            }
+            if (size < headerSize || position + size > end) break;
+            long bodyStart = position + headerSize;
+            long bodyEnd = position + size;
+
+            switch (type) {
+                case "moov":
+                case "udta":
+                case "ilst": {
+                    byte[] found = readMp4(bodyStart, bodyEnd, depth + 1);
+                    if (found != null) return found;
+                    break;
+                }
+                case "meta": {
+                    // A full box with version and flags, except in some QuickTime-style files
+                    boolean fullBox = !(bodyStart + 8 <= bodyEnd
+                            && ascii(readAt(bodyStart, 8), 4, 4).equals("hdlr"));
+                    byte[] found = readMp4(bodyStart + (fullBox ? 4 : 0), bodyEnd, depth + 1);
+                    if (found != null) return found;
+                    break;
+                }
+                case "covr":
+                    return readCovr(bodyStart, bodyEnd);
+                default:
+                    break;
+            }
+            position = bodyEnd;
+        }
+        return null;
+    }
+
+    private byte[] readCovr(long start, long end) throws IOException {
+        long position = start;
+        while (position + 16 <= end) {
+            ByteBuffer header = readAt(position, 16);
+            long size = header.getInt(0) & 0xffffffffL;
+            if (size < 16 || position + size > end) return null;
+            if (ascii(header, 4, 4).equals("data")) {
+                // Type indicator and locale, then the image
+                long length = size - 16;
+                if (length == 0 || length > MAX_PICTURE_BYTES) return null;
+                ByteBuffer data = readAt(position + 16, (int) length);
+                byte[] image = new byte[data.remaining()];
+                data.get(image);
+                return image;
+            }
+            position += size;
+        }
+        return null;
+    }
+
+    // Helpers
+
+    private interface Source {
+        ByteBuffer read(long position, int length) throws IOException;
+    }
+
+    private class FileSource implements Source {
+        private final long base;
+
+        FileSource(long base) {
+            this.base = base;
+        }
+
+        @Override
+        public ByteBuffer read(long position, int length) throws IOException {
+            return readAt(base + position, length);
+        }
+    }
+
+    private static class BufferSource implements Source {
+        private final ByteBuffer buffer;
+
+        BufferSource(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public ByteBuffer read(long position, int length) throws IOException {
+            if (position < 0 || position + length > buffer.limit()) {
+                throw new IOException("Read past end of tag");
+            }
+            ByteBuffer slice = buffer.duplicate();
+            slice.position((int) position);
+            slice.limit((int) position + length);
+            return slice.slice();
+        }
+    }
+
+    private ByteBuffer readAt(long position, int length) throws IOException {
+        if (position < 0 || length < 0 || length > MAX_PICTURE_BYTES + 1024
+                || position + length > fileSize) {
+            throw new IOException("Read past end of file");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // Every 0xFF 0x00 pair becomes 0xFF
+    private static ByteBuffer unsynchronise(ByteBuffer in) {
+        byte[] out = new byte[in.remaining()];
+        int length = 0;
+        byte previous = 0;
+        for (int i = in.position(); i < in.limit(); i++) {
+            byte b = in.get(i);
+            if (!(previous == (byte) 0xff && b == 0)) {
+                out[length++] = b;
+            }
+            previous = b;
+        }
+        return ByteBuffer.wrap(out, 0, length).slice();
+    }
+
+    private static long synchsafe(int value) {
+        return ((value >> 24) & 0x7f) << 21 | ((value >> 16) & 0x7f) << 14 | ((value >> 8) & 0x7f) << 7
+                | (value & 0x7f);
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int offset, String prefix) {
+        return buffer.limit() >= offset + prefix.length() && ascii(buffer, offset, prefix.length()).equals(prefix);
+    }
+
+    private static String ascii(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) bytes[i] = buffer.get(offset + i);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -20,6 +20,7 @@ public class FullPlayerActivity extends AppCompatActivity implements MusicServic
     private boolean serviceBound = false;
     private TextView txtSongTitle, txtArtist, txtAlbum, txtCurrentTime, txtTotalTime;
     private ImageView imgAlbumArt, btnNext, btnPrev, btnShuffle, btnRepeat, btnMetadata, btnHide;
+    private AlbumArtLoader.Request artRequest;
     private FloatingActionButton btnPlay;
     private SeekBar seekBar;
     private Handler handler = new Handler();
@@ -157,6 +158,10 @@ public class FullPlayerActivity extends AppCompatActivity implements MusicServic
             Intent intent = new Intent(this, MetadataActivity.class);
             intent.putExtra("file_path", song.getPath());
             intent.putExtra("album_id", song.getAlbumId());
+            intent.putExtra("title", song.getTitle());
+            intent.putExtra("artist", song.getArtist());
+            intent.putExtra("album", song.getAlbum());
+            intent.putExtra("duration", song.getDuration());
             startActivity(intent);
         }
     }
@@ -170,7 +175,8 @@ public class FullPlayerActivity extends AppCompatActivity implements MusicServic
                 txtAlbum.setText(song.getAlbum());
                 txtTotalTime.setText(song.getFormattedDuration());
                 seekBar.setMax((int) song.getDuration());
-                AlbumArtLoader.loadAlbumArt(this, song.getPath(), imgAlbumArt);
+                artRequest = AlbumArtLoader.loadAlbumArt(this, song.getAlbumId(), song.getPath(),
+                        AlbumArtLoader.ArtSize.PLAYER, imgAlbumArt);
             }
         });
     }
@@ -212,6 +218,9 @@ public class FullPlayerActivity extends AppCompatActivity implements MusicServic
     protected void onDestroy() {
         super.onDestroy();
         handler.removeCallbacksAndMessages(null);
+        if (artRequest != null) {
+            artRequest.cancel();
+        }
         if (serviceBound && musicService != null) {
             musicService.unregisterListener(this);
             unbindService(serviceConnection);
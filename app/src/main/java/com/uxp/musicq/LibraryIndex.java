@@ -0,0 +1,220 @@
+package com.uxp.musicq;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Album, artist and genre views of the library, grouped and totalled in a
+ * single pass over the song store so the browse tabs never have to go back
+ * to MediaStore once per album or artist.
+ */
+public class LibraryIndex {
+    private static final String VARIOUS_ARTISTS = "Various Artists";
+
+    private final SongStore store;
+    private final Map<Long, Group> albumGroups;
+    private final Map<String, Group> artistGroups;
+    private final Map<String, Group> genreGroups;
+    private final List<Album> albums;
+    private final List<Category> artists;
+    private final List<Category> genres;
+
+    private static class Group {
+        final int firstRow;
+        int[] rows = new int[4];
+        int count;
+        long totalDuration;
+        boolean mixedArtists;
+        Album album;
+        // Songs per album, for artists and genres
+        Map<Long, int[]> albumSizes;
+
+        Group(int firstRow) {
+            this.firstRow = firstRow;
+        }
+
+        void add(int row) {
+            if (count == rows.length) {
+                rows = Arrays.copyOf(rows, count * 2);
+            }
+            rows[count++] = row;
+        }
+
+        void countAlbum(long albumId) {
+            int[] size = albumSizes.get(albumId);
+            if (size == null) {
+                albumSizes.put(albumId, new int[]{1});
+            } else {
+                size[0]++;
+            }
+        }
+    }
+
+    private LibraryIndex(SongStore store, Map<Long, Group> albumGroups, Map<String, Group> artistGroups,
+                         Map<String, Group> genreGroups, List<Album> albums, List<Category> artists,
+                         List<Category> genres) {
+        this.store = store;
+        this.albumGroups = albumGroups;
+        this.artistGroups = artistGroups;
+        this.genreGroups = genreGroups;
+        this.albums = albums;
+        this.artists = artists;
+        this.genres = genres;
+    }
+
+    public static LibraryIndex build(SongStore store) {
+        Map<Long, Group> albumGroups = new HashMap<>();
+        Map<String, Group> artistGroups = new HashMap<>();
+        Map<String, Group> genreGroups = new HashMap<>();
+
+        for (int row = 0; row < store.size(); row++) {
+            long albumId = store.getAlbumId(row);
+            long duration = store.getDuration(row);
+
+            Group album = albumGroups.get(albumId);
+            if (album == null) {
+                album = new Group(row);
+                albumGroups.put(albumId, album);
+            } else if (!album.mixedArtists
+                    && !store.getArtist(album.firstRow).equals(store.getArtist(row))) {
+                album.mixedArtists = true;
+            }
+            album.add(row);
+            album.totalDuration += duration;
+
+            addToCategory(artistGroups, store.getArtist(row), row, albumId, duration);
+            addToCategory(genreGroups, store.getGenre(row), row, albumId, duration);
+        }
+
+        List<Group> sortedAlbums = new ArrayList<>(albumGroups.values());
+        Collections.sort(sortedAlbums, (a, b) -> {
+            int result = store.compareAlbums(a.firstRow, b.firstRow);
+            return result != 0 ? result
+                    : Long.compare(store.getAlbumId(a.firstRow), store.getAlbumId(b.firstRow));
+        });
+
+        List<Album> albums = new ArrayList<>(sortedAlbums.size());
+        for (Group group : sortedAlbums) {
+            group.rows = sortByTrack(store, Arrays.copyOf(group.rows, group.count));
+
+            int first = group.firstRow;
+            Album album = new Album(store.getAlbumId(first), store.getAlbum(first),
+                    group.mixedArtists ? VARIOUS_ARTISTS : store.getArtist(first), group.count);
+            album.setFirstSongPath(store.getPath(group.rows[0]));
+            album.setTotalDuration(group.totalDuration);
+            group.album = album;
+            albums.add(album);
+        }
+
+        List<Category> artists = toCategories(store, artistGroups, albumGroups, store::compareArtists);
+        List<Category> genres = toCategories(store, genreGroups, albumGroups, store::compareGenres);
+
+        return new LibraryIndex(store, albumGroups, artistGroups, genreGroups,
+                Collections.unmodifiableList(albums), artists, genres);
+    }
+
+    private static void addToCategory(Map<String, Group> groups, String name, int row,
+                                      long albumId, long duration) {
+        Group group = groups.get(name);
+        if (group == null) {
+            group = new Group(row);
+            group.albumSizes = new HashMap<>();
+            groups.put(name, group);
+        }
+        group.add(row);
+        group.totalDuration += duration;
+        group.countAlbum(albumId);
+    }
+
+    /**
+     * Makes the category list in collation order. Each category's art comes
+     * from its biggest album.
+     */
+    private static List<Category> toCategories(SongStore store, Map<String, Group> groups,
+                                               Map<Long, Group> albumGroups,
+                                               Comparator<Integer> rowOrder) {
+        List<Map.Entry<String, Group>> sorted = new ArrayList<>(groups.entrySet());
+        Collections.sort(sorted, (a, b) -> rowOrder.compare(a.getValue().firstRow, b.getValue().firstRow));
+
+        List<Category> categories = new ArrayList<>(sorted.size());
+        for (Map.Entry<String, Group> entry : sorted) {
+            Group group = entry.getValue();
+            group.rows = Arrays.copyOf(group.rows, group.count);
+
+            long biggestAlbum = store.getAlbumId(group.firstRow);
+            int biggestSize = 0;
+            for (Map.Entry<Long, int[]> album : group.albumSizes.entrySet()) {
+                if (album.getValue()[0] > biggestSize) {
+                    biggestSize = album.getValue()[0];
+                    biggestAlbum = album.getKey();
+                }
+            }
+
+            Category category = new Category(entry.getKey(), group.count, group.albumSizes.size(),
+                    group.totalDuration);
+            category.setArtPath(store.getPath(albumGroups.get(biggestAlbum).firstRow));
+            category.setArtAlbumId(biggestAlbum);
+            categories.add(category);
+            // Only needed while building
+            group.albumSizes = null;
+        }
+        return Collections.unmodifiableList(categories);
+    }
+
+    private static int[] sortByTrack(SongStore store, int[] rows) {
+        // Stable sort: tracks without a number keep their title order
+        RowSort.sort(rows, (a, b) -> Integer.compare(store.getTrack(a), store.getTrack(b)));
+        return rows;
+    }
+
+    public List<Album> getAlbums() {
+        return albums;
+    }
+
+    public Album getAlbum(long albumId) {
+        Group group = albumGroups.get(albumId);
+        return group != null ? group.album : null;
+    }
+
+    public List<Song> getSongs(long albumId) {
+        return songsOf(albumGroups.get(albumId));
+    }
+
+    public List<Category> getArtists() {
+        return artists;
+    }
+
+    /**
+     * The artist's songs in title order.
+     */
+    public List<Song> getArtistSongs(String artist) {
+        return songsOf(artistGroups.get(artist));
+    }
+
+    public List<Category> getGenres() {
+        return genres;
+    }
+
+    /**
+     * The genre's songs in title order.
+     */
+    public List<Song> getGenreSongs(String genre) {
+        return songsOf(genreGroups.get(genre));
+    }
+
+    private List<Song> songsOf(Group group) {
+        if (group == null) {
+            return new ArrayList<>();
+        }
+        return store.asList(group.rows);
+    }
+
+    public int size() {
+        return albums.size();
+    }
+}
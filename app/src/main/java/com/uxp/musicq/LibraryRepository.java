@@ -0,0 +1,402 @@
+package com.uxp.musicq;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.util.Log;
+import androidx.recyclerview.widget.DiffUtil;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Process-wide owner of the scanned library. Scans run on a single background
+ * thread and every screen reads the same in-memory result; listeners are
+ * always called on the main thread.
+ */
+public class LibraryRepository {
+    private static final String TAG = "LibraryRepository";
+    private static LibraryRepository instance;
+    private static final long CHANGE_DEBOUNCE_MS = 1500;
+    private static final long CHANGE_MAX_DELAY_MS = 10000;
+
+    private final LibrarySync librarySync;
+    private final TagScanner tagScanner;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<LibraryListener> listeners = new ArrayList<>();
+
+    private volatile List<Song> songs = Collections.emptyList();
+    private volatile SongStore store = SongStore.empty();
+    private volatile LibraryIndex libraryIndex = LibraryIndex.build(store);
+    private volatile SearchIndex searchIndex = new SearchIndex();
+    private volatile boolean loaded = false;
+    // The first sync failed; screens were shown the empty library and loaded stays unset
+    private boolean loadFailed = false;
+    private boolean refreshRunning = false;
+    private boolean refreshPending = false;
+    // Touched only on the executor
+    private boolean tagsScanned = false;
+    private ArrayList<Song> streamingSongs;
+    private long firstPendingChange = 0;
+    private boolean snapshotRequested = false;
+    private boolean snapshotReady = false;
+    private final List<Runnable> snapshotWaiters = new ArrayList<>();
+    // Trimmed sort orders being sorted again on the executor
+    private final Set<SongStore.SortOrder> ordersSorting = EnumSet.noneOf(SongStore.SortOrder.class);
+
+    private final Runnable debouncedRefresh = () -> {
+        firstPendingChange = 0;
+        refresh();
+    };
+
+    public interface LibraryListener {
+        void onLibraryChanged(LibraryRepository repository);
+
+        /**
+         * Called while a first scan is still streaming; {@link #getSongs()} has
+         * grown by {@code count} rows starting at {@code start}.
+         */
+        default void onSongsAppended(LibraryRepository repository, int start, int count) {
+        }
+
+        /**
+         * Called after an incremental sync with the diff from {@code previous}
+         * to the new {@link #getSongs()}. Listeners that cannot apply a diff
+         * get a plain {@link #onLibraryChanged}.
+         */
+        default void onSongsUpdated(LibraryRepository repository, List<Song> previous,
+                                    DiffUtil.DiffResult diff) {
+            onLibraryChanged(repository);
+        }
+    }
+
+    private LibraryRepository(Context context) {
+        Context appContext = context.getApplicationContext();
+        librarySync = new LibrarySync(appContext);
+        tagScanner = TagScanner.getInstance(appContext);
+        // The songs and indexes are the library itself; only the sort orders can be made again
+        MemoryManager.getInstance(appContext).register("library sort orders", new MemoryManager.Trimmable() {
+            @Override
+            public long getSize() {
+                return store.getOrderBytes();
+            }
+
+            @Override
+            public long getMaxSize() {
+                return store.getMaxOrderBytes();
+            }
+
+            @Override
+            public void trimToSize(long maxBytes) {
+                store.trimOrders(maxBytes);
+            }
+        });
+        appContext.getContentResolver().registerContentObserver(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, true, new ContentObserver(mainHandler) {
+                    @Override
+                    public void onChange(boolean selfChange, Uri uri) {
+                        onMediaStoreChanged();
+                    }
+                });
+    }
+
+    public static synchronized LibraryRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new LibraryRepository(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Must be called on the main thread. A listener added after the first scan,
+     * or after it failed, is told about the current library straight away.
+     */
+    public void addListener(LibraryListener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+        if (loaded || loadFailed) {
+            listener.onLibraryChanged(this);
+        }
+    }
+
+    public void removeListener(LibraryListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Restores the library saved by the last sync so screens can render before
+     * MediaStore is consulted. {@code onReady} runs on the main thread once the
+     * snapshot has been read (or found missing). A later {@link #refresh()}
+     * reconciles it with MediaStore.
+     */
+    public void loadSnapshot(Runnable onReady) {
+        if (snapshotReady) {
+            if (onReady != null) onReady.run();
+            return;
+        }
+        if (onReady != null) {
+            snapshotWaiters.add(onReady);
+        }
+        if (snapshotRequested) return;
+        snapshotRequested = true;
+
+        executor.execute(() -> {
+            boolean restored;
+            try {
+                restored = librarySync.loadSnapshot();
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading library snapshot", e);
+                restored = false;
+            }
+
+            List<Song> restoredSongs = librarySync.getSongs();
+            SongStore restoredStore = librarySync.getStore();
+            LibraryIndex restoredIndex = librarySync.getLibraryIndex();
+            SearchIndex restoredSearch = librarySync.getSearchIndex();
+            boolean publish = restored;
+
+            mainHandler.post(() -> {
+                snapshotReady = true;
+                if (publish && !loaded) {
+                    songs = restoredSongs;
+                    store = restoredStore;
+                    libraryIndex = restoredIndex;
+                    searchIndex = restoredSearch;
+                    loaded = true;
+                    notifyLibraryChanged();
+                }
+                for (Runnable waiter : snapshotWaiters) {
+                    waiter.run();
+                }
+                snapshotWaiters.clear();
+            });
+        });
+    }
+
+    /**
+     * Schedules a background sync. Calls made while one is running collapse
+     * into a single follow-up sync.
+     */
+    public void refresh() {
+        if (refreshRunning) {
+            refreshPending = true;
+            return;
+        }
+        refreshRunning = true;
+        loadSnapshot(null);
+        executor.execute(this::runRefresh);
+    }
+
+    /**
+     * MediaStore fires one notification per row during bulk copies, so wait for
+     * a quiet period, but never longer than CHANGE_MAX_DELAY_MS overall.
+     */
+    private void onMediaStoreChanged() {
+        long now = SystemClock.uptimeMillis();
+        if (firstPendingChange == 0) {
+            firstPendingChange = now;
+        }
+
+        mainHandler.removeCallbacks(debouncedRefresh);
+        long delay = Math.min(CHANGE_DEBOUNCE_MS, firstPendingChange + CHANGE_MAX_DELAY_MS - now);
+        mainHandler.postDelayed(debouncedRefresh, Math.max(0, delay));
+    }
+
+    private void runRefresh() {
+        List<Song> previous = librarySync.getSongs();
+        boolean changed;
+        boolean synced = false;
+        DiffUtil.DiffResult diff = null;
+        try {
+            LibrarySync.Delta delta = librarySync.sync(page -> mainHandler.post(() -> appendPage(page)));
+            changed = !delta.isEmpty() || !loaded;
+            if (changed && loaded && !delta.fullRescan) {
+                diff = DiffUtil.calculateDiff(new SongDiff(previous, librarySync.getSongs()), false);
+            }
+            synced = true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error syncing library", e);
+            changed = false;
+        }
+
+        List<Song> newSongs = librarySync.getSongs();
+        SongStore newStore = librarySync.getStore();
+        LibraryIndex newIndex = librarySync.getLibraryIndex();
+        SearchIndex newSearch = librarySync.getSearchIndex();
+        boolean notify = changed;
+        boolean succeeded = synced;
+        DiffUtil.DiffResult songDiff = diff;
+
+        if (changed) {
+            AlbumArtLoader.onLibraryChanged();
+        }
+
+        // Once per process, then whenever the library changes; unchanged files are skipped anyway
+        if (changed || !tagsScanned) {
+            tagsScanned = true;
+            List<String> paths = new ArrayList<>(newStore.size());
+            for (int row = 0; row < newStore.size(); row++) {
+                paths.add(newStore.getPath(row));
+            }
+            tagScanner.enrich(paths);
+        }
+
+        mainHandler.post(() -> {
+            songs = newSongs;
+            store = newStore;
+            libraryIndex = newIndex;
+            searchIndex = newSearch;
+            streamingSongs = null;
+            refreshRunning = false;
+            // Left unset on failure so the next refresh still counts as the first load
+            loadFailed = !succeeded && !loaded;
+            if (succeeded) {
+                loaded = true;
+            }
+
+            if (notify && songDiff != null) {
+                for (LibraryListener listener : new ArrayList<>(listeners)) {
+                    listener.onSongsUpdated(this, previous, songDiff);
+                }
+            } else if (notify || loadFailed) {
+                // A failed first load still reports, so screens can leave their loading state
+                notifyLibraryChanged();
+            }
+            if (refreshPending) {
+                refreshPending = false;
+                refresh();
+            }
+        });
+    }
+
+    private void appendPage(List<Song> page) {
+        // Only the very first scan streams; later rescans swap in the result at the end
+        if (loaded) return;
+
+        if (streamingSongs == null) {
+            streamingSongs = new ArrayList<>(songs);
+            // A live read-only view, so adapters holding it see each appended page
+            songs = Collections.unmodifiableList(streamingSongs);
+        }
+
+        int start = streamingSongs.size();
+        streamingSongs.addAll(page);
+        for (LibraryListener listener : new ArrayList<>(listeners)) {
+            listener.onSongsAppended(this, start, page.size());
+        }
+    }
+
+    private void notifyLibraryChanged() {
+        for (LibraryListener listener : new ArrayList<>(listeners)) {
+            listener.onLibraryChanged(this);
+        }
+    }
+
+    private static class SongDiff extends DiffUtil.Callback {
+        private final List<Song> oldSongs;
+        private final List<Song> newSongs;
+
+        SongDiff(List<Song> oldSongs, List<Song> newSongs) {
+            this.oldSongs = oldSongs;
+            this.newSongs = newSongs;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldSongs.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newSongs.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldSongs.get(oldItemPosition).getId() == newSongs.get(newItemPosition).getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldSongs.get(oldItemPosition).hasSameContent(newSongs.get(newItemPosition));
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public List<Song> getSongs() {
+        return songs;
+    }
+
+    /**
+     * The songs in the given order. {@link SongStore.SortOrder#TITLE} returns
+     * {@link #getSongs()} itself. Must be called on the main thread. An order
+     * trimmed under memory pressure is sorted again in the background;
+     * meanwhile this returns the songs in title order, and listeners get
+     * {@link LibraryListener#onLibraryChanged} once the order is ready.
+     */
+    public List<Song> getSongs(SongStore.SortOrder order) {
+        // While the first scan streams there is no store yet, only the title-ordered pages
+        if (order == SongStore.SortOrder.TITLE || streamingSongs != null) {
+            return songs;
+        }
+        SongStore current = store;
+        if (current.hasOrder(order)) {
+            return current.asList(order);
+        }
+
+        if (ordersSorting.add(order)) {
+            executor.execute(() -> {
+                current.getOrder(order);
+                mainHandler.post(() -> {
+                    ordersSorting.remove(order);
+                    if (store == current) {
+                        notifyLibraryChanged();
+                    }
+                });
+            });
+        }
+        return songs;
+    }
+
+    public LibraryIndex getLibraryIndex() {
+        return libraryIndex;
+    }
+
+    /**
+     * Songs matching the query, in title order, or best match first when
+     * only typo-tolerant matches were found. Fast enough to call on the main
+     * thread for every keystroke.
+     */
+    public List<Song> search(String query) {
+        SongStore current = store;
+        SearchIndex.Result result = searchIndex.search(query);
+
+        // The index is updated before the new store is published; skip ids it doesn't have yet
+        int[] rows = new int[result.ids.length];
+        int count = 0;
+        for (long id : result.ids) {
+            int row = current.indexOf(id);
+            if (row >= 0) rows[count++] = row;
+        }
+        rows = Arrays.copyOf(rows, count);
+        if (!result.fuzzy) {
+            // Rows are in title order
+            Arrays.sort(rows);
+        }
+        return current.asList(rows);
+    }
+}
@@ -0,0 +1,228 @@
+package com.uxp.musicq;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Versioned on-disk image of a {@link SongStore} plus the MediaStore sync
+ * markers it was taken at. The file mirrors the store's column layout, so
+ * loading it is a memory map and a few bulk array copies rather than a
+ * per-row parse.
+ *
+ * Layout (big-endian): magic, version, sync header, the sort key locale, the
+ * four string pools and the artist, album and genre sort keys, row count, the
+ * numeric columns one after another, then titles, file names and title sort
+ * keys. Strings and keys are a length followed by the bytes, UTF-8 for
+ * strings.
+ */
+class LibrarySnapshot {
+    private static final int MAGIC = 0x4D514C42; // "MQLB"
+    private static final int VERSION = 4;
+
+    final SongStore store;
+    final String mediaStoreVersion;
+    final long generation;
+    final long lastSyncSeconds;
+
+    LibrarySnapshot(SongStore store, String mediaStoreVersion, long generation, long lastSyncSeconds) {
+        this.store = store;
+        this.mediaStoreVersion = mediaStoreVersion;
+        this.generation = generation;
+        this.lastSyncSeconds = lastSyncSeconds;
+    }
+
+    /**
+     * Returns null if the file is missing or was written by another version;
+     * a truncated or corrupt file throws.
+     */
+    static LibrarySnapshot read(File file) throws IOException {
+        if (!file.exists()) return null;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+
+            StringReader strings = new StringReader(buffer);
+            String mediaStoreVersion = strings.read();
+            long generation = buffer.getLong();
+            long lastSyncSeconds = buffer.getLong();
+            String locale = strings.read();
+
+            String[] artistPool = strings.readArray(readCount(buffer, 4));
+            String[] albumPool = strings.readArray(readCount(buffer, 4));
+            String[] genrePool = strings.readArray(readCount(buffer, 4));
+            String[] dirPool = strings.readArray(readCount(buffer, 4));
+            byte[][] artistKeys = readBytesArray(buffer, artistPool.length);
+            byte[][] albumKeys = readBytesArray(buffer, albumPool.length);
+            byte[][] genreKeys = readBytesArray(buffer, genrePool.length);
+
+            // 4 longs, 5 ints and three lengths per row
+            int size = readCount(buffer, 4 * 8 + 5 * 4 + 3 * 4);
+            long[] ids = new long[size];
+            long[] albumIds = new long[size];
+            long[] durations = new long[size];
+            long[] datesAdded = new long[size];
+            int[] tracks = new int[size];
+            int[] artistRefs = new int[size];
+            int[] albumRefs = new int[size];
+            int[] genreRefs = new int[size];
+            int[] dirRefs = new int[size];
+
+            readLongs(buffer, ids);
+            readLongs(buffer, albumIds);
+            readLongs(buffer, durations);
+            readLongs(buffer, datesAdded);
+            readInts(buffer, tracks);
+            readInts(buffer, artistRefs);
+            readInts(buffer, albumRefs);
+            readInts(buffer, genreRefs);
+            readInts(buffer, dirRefs);
+
+            String[] titles = strings.readArray(size);
+            String[] fileNames = strings.readArray(size);
+            byte[][] titleKeys = readBytesArray(buffer, size);
+
+            SortKeys sortKeys = new SortKeys(locale, titleKeys, artistKeys, albumKeys, genreKeys);
+            SongStore store = new SongStore(ids, albumIds, durations, datesAdded, tracks, titles,
+                    fileNames, artistRefs, albumRefs, genreRefs, dirRefs, artistPool, albumPool,
+                    genrePool, dirPool, sortKeys);
+            // Rows are in the title order of the locale the snapshot was written in
+            return new LibrarySnapshot(store, mediaStoreVersion, generation, lastSyncSeconds);
+        }
+    }
+
+    /**
+     * Writes to a temporary file first so a crash never leaves a half-written
+     * snapshot in place.
+     */
+    void write(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, mediaStoreVersion != null ? mediaStoreVersion : "");
+            out.writeLong(generation);
+            out.writeLong(lastSyncSeconds);
+            writeString(out, store.sortKeys.locale);
+
+            writeStrings(out, store.artistPool, true);
+            writeStrings(out, store.albumPool, true);
+            writeStrings(out, store.genrePool, true);
+            writeStrings(out, store.dirPool, true);
+            writeBytesArray(out, store.sortKeys.artists);
+            writeBytesArray(out, store.sortKeys.albums);
+            writeBytesArray(out, store.sortKeys.genres);
+
+            out.writeInt(store.size);
+            for (long value : store.ids) out.writeLong(value);
+            for (long value : store.albumIds) out.writeLong(value);
+            for (long value : store.durations) out.writeLong(value);
+            for (long value : store.datesAdded) out.writeLong(value);
+            for (int value : store.tracks) out.writeInt(value);
+            for (int value : store.artistRefs) out.writeInt(value);
+            for (int value : store.albumRefs) out.writeInt(value);
+            for (int value : store.genreRefs) out.writeInt(value);
+            for (int value : store.dirRefs) out.writeInt(value);
+
+            writeStrings(out, store.titles, false);
+            writeStrings(out, store.fileNames, false);
+            writeBytesArray(out, store.sortKeys.titles);
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    private static int readCount(ByteBuffer buffer, int minBytesEach) throws IOException {
+        int count = buffer.getInt();
+        if (count < 0 || (long) count * minBytesEach > buffer.remaining()) {
+            throw new IOException("Corrupt library snapshot");
+        }
+        return count;
+    }
+
+    private static void readLongs(ByteBuffer buffer, long[] target) {
+        buffer.asLongBuffer().get(target);
+        buffer.position(buffer.position() + target.length * 8);
+    }
+
+    private static void readInts(ByteBuffer buffer, int[] target) {
+        buffer.asIntBuffer().get(target);
+        buffer.position(buffer.position() + target.length * 4);
+    }
+
+    private static byte[][] readBytesArray(ByteBuffer buffer, int count) throws IOException {
+        byte[][] values = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            values[i] = new byte[readCount(buffer, 1)];
+            buffer.get(values[i]);
+        }
+        return values;
+    }
+
+    private static void writeBytesArray(DataOutputStream out, byte[][] values) throws IOException {
+        for (byte[] value : values) {
+            out.writeInt(value.length);
+            out.write(value);
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] values, boolean withCount)
+            throws IOException {
+        if (withCount) {
+            out.writeInt(values.length);
+        }
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static class StringReader {
+        private final ByteBuffer buffer;
+        private byte[] scratch = new byte[256];
+
+        StringReader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        String read() {
+            int length = buffer.getInt();
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        String[] readArray(int count) {
+            String[] values = new String[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = read();
+            }
+            return values;
+        }
+    }
+}
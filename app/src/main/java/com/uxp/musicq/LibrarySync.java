@@ -0,0 +1,265 @@
+package com.uxp.musicq;
+
+import android.content.Context;
+import android.os.Build;
+import android.provider.MediaStore;
+import android.util.Log;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps a persistent copy of the song table and brings it up to date by
+ * asking MediaStore only for what changed since the previous sync.
+ */
+public class LibrarySync {
+    private static final String TAG = "LibrarySync";
+    private static final String SNAPSHOT_FILE = "library_snapshot.bin";
+    private static final int FIRST_PAGE_SIZE = 40;
+    private static final int PAGE_SIZE = 1000;
+
+    private final Context context;
+    private final File snapshotFile;
+    private SongStore store = SongStore.empty();
+    private List<Song> songs = store.asList();
+    private LibraryIndex libraryIndex = LibraryIndex.build(store);
+    private SearchIndex searchIndex = new SearchIndex();
+    private boolean snapshotLoaded = false;
+    private String mediaStoreVersion;
+    private long generation = -1;
+    private long lastSyncSeconds = -1;
+
+    public static class Delta {
+        public final List<Song> added = new ArrayList<>();
+        public final List<Song> updated = new ArrayList<>();
+        public final Set<Long> removed = new HashSet<>();
+        public boolean fullRescan = false;
+
+        public boolean isEmpty() {
+            return !fullRescan && added.isEmpty() && updated.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    public interface PageListener {
+        void onPage(List<Song> page);
+    }
+
+    public LibrarySync(Context context) {
+        this.context = context.getApplicationContext();
+        this.snapshotFile = new File(this.context.getFilesDir(), SNAPSHOT_FILE);
+    }
+
+    /**
+     * Returns the songs sorted by title as of the last sync.
+     */
+    public List<Song> getSongs() {
+        return songs;
+    }
+
+    public SongStore getStore() {
+        return store;
+    }
+
+    public LibraryIndex getLibraryIndex() {
+        return libraryIndex;
+    }
+
+    /**
+     * The search index over the current songs. Incremental syncs update it
+     * in place; a full rescan replaces it.
+     */
+    public SearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    public Delta sync() throws IOException {
+        return sync(null);
+    }
+
+    /**
+     * Like {@link #sync()}, but a full rescan streams the library in pages to
+     * the given listener as they come off the cursor. Throws if a MediaStore
+     * query fails, leaving the songs, markers and snapshot as they were.
+     */
+    public Delta sync(PageListener pageListener) throws IOException {
+        loadSnapshot();
+
+        MusicLoader loader = new MusicLoader(context);
+        String currentVersion = MediaStore.getVersion(context);
+        boolean useGeneration = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R;
+        // Markers are taken before querying so changes made mid-sync show up next time
+        long currentGeneration = useGeneration
+                ? MediaStore.getGeneration(context, MediaStore.VOLUME_EXTERNAL) : -1;
+        long syncSeconds = System.currentTimeMillis() / 1000;
+
+        Delta delta = new Delta();
+        boolean canUseDelta = store.size() > 0 && currentVersion.equals(mediaStoreVersion)
+                && (useGeneration ? generation >= 0 : lastSyncSeconds >= 0);
+        SongStore.Builder builder = null;
+
+        if (!canUseDelta) {
+            delta.fullRescan = true;
+            builder = loadAllPages(loader, pageListener);
+        } else {
+            Set<Long> currentIds = loader.loadSongIds();
+            List<Song> changedSongs = loader.loadSongsChangedSince(
+                    useGeneration ? generation : lastSyncSeconds, useGeneration);
+            if (currentIds == null || changedSongs == null) {
+                throw new IOException("MediaStore query failed");
+            }
+
+            Map<Long, Song> changed = new HashMap<>();
+            for (Song song : changedSongs) {
+                changed.put(song.getId(), song);
+                if (store.contains(song.getId())) {
+                    delta.updated.add(song);
+                } else {
+                    delta.added.add(song);
+                }
+            }
+
+            // Rows can appear with an old DATE_MODIFIED (e.g. copied with mtime kept)
+            List<Long> unseen = new ArrayList<>();
+            for (Long id : currentIds) {
+                if (!store.contains(id) && !changed.containsKey(id)) {
+                    unseen.add(id);
+                }
+            }
+            List<Song> unseenSongs = loader.loadSongsById(unseen);
+            if (unseenSongs == null) {
+                throw new IOException("MediaStore query failed");
+            }
+            for (Song song : unseenSongs) {
+                changed.put(song.getId(), song);
+                delta.added.add(song);
+            }
+
+            for (int row = 0; row < store.size(); row++) {
+                if (!currentIds.contains(store.getId(row))) {
+                    delta.removed.add(store.getId(row));
+                }
+            }
+
+            if (!delta.isEmpty()) {
+                builder = new SongStore.Builder(store.size() + delta.added.size());
+                for (int row = 0; row < store.size(); row++) {
+                    long id = store.getId(row);
+                    if (!delta.removed.contains(id) && !changed.containsKey(id)) {
+                        builder.add(store, row);
+                    }
+                }
+                for (Song song : changed.values()) {
+                    builder.add(song);
+                }
+            }
+        }
+
+        mediaStoreVersion = currentVersion;
+        generation = currentGeneration;
+        lastSyncSeconds = syncSeconds;
+
+        // An empty delta means the old markers would still be correct, so skip the rewrite
+        if (!delta.isEmpty()) {
+            setStore(builder.build());
+            if (delta.fullRescan) {
+                searchIndex = SearchIndex.build(store);
+            } else {
+                updateSearchIndex(delta);
+            }
+            writeSnapshot();
+        }
+
+        Log.d(TAG, "Sync: " + (delta.fullRescan ? "full rescan" : delta.added.size() + " added, " +
+                delta.updated.size() + " updated, " + delta.removed.size() + " removed") +
+                ", " + store.size() + " songs");
+        return delta;
+    }
+
+    private SongStore.Builder loadAllPages(MusicLoader loader, PageListener pageListener)
+            throws IOException {
+        SongStore.Builder builder = new SongStore.Builder(0);
+        boolean loaded = loader.loadSongsInPages(FIRST_PAGE_SIZE, PAGE_SIZE, page -> {
+            for (Song song : page) {
+                builder.add(song);
+            }
+            if (pageListener != null) {
+                pageListener.onPage(page);
+            }
+        });
+        if (!loaded) {
+            throw new IOException("MediaStore query failed");
+        }
+        return builder;
+    }
+
+    private void updateSearchIndex(Delta delta) {
+        for (Long id : delta.removed) {
+            searchIndex.remove(id);
+        }
+        for (Song song : delta.updated) {
+            searchIndex.add(song.getId(), song.getTitle(), song.getArtist(), song.getAlbum());
+        }
+        for (Song song : delta.added) {
+            searchIndex.add(song.getId(), song.getTitle(), song.getArtist(), song.getAlbum());
+        }
+    }
+
+    private void setStore(SongStore newStore) {
+        // Sort every order here, off the main thread, so switching is instant later
+        for (SongStore.SortOrder order : SongStore.SortOrder.values()) {
+            // TITLE is the order the rows are already in
+            if (order != SongStore.SortOrder.TITLE) {
+                newStore.getOrder(order);
+            }
+        }
+        store = newStore;
+        songs = newStore.asList();
+        libraryIndex = LibraryIndex.build(newStore);
+    }
+
+    /**
+     * Loads the snapshot written by the previous sync, if any. Safe to call
+     * more than once; only the first call touches the disk.
+     *
+     * @return true if a non-empty library was restored
+     */
+    public boolean loadSnapshot() {
+        if (snapshotLoaded) {
+            return store.size() > 0;
+        }
+        snapshotLoaded = true;
+
+        try {
+            LibrarySnapshot snapshot = LibrarySnapshot.read(snapshotFile);
+            if (snapshot == null) {
+                return false;
+            }
+            setStore(snapshot.store.inCurrentLocale());
+            searchIndex = SearchIndex.build(store);
+            mediaStoreVersion = snapshot.mediaStoreVersion;
+            generation = snapshot.generation;
+            lastSyncSeconds = snapshot.lastSyncSeconds;
+            Log.d(TAG, "Restored " + store.size() + " songs from snapshot");
+            if (store != snapshot.store) {
+                // Sorted for another locale; saved re-sorted so the next start doesn't sort again
+                writeSnapshot();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading library snapshot", e);
+        }
+        return store.size() > 0;
+    }
+
+    private void writeSnapshot() {
+        try {
+            new LibrarySnapshot(store, mediaStoreVersion, generation, lastSyncSeconds).write(snapshotFile);
+        } catch (Exception e) {
+            Log.e(TAG, "Error writing library snapshot", e);
+        }
+    }
+}
@@ -8,6 +8,7 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.provider.Settings;
 import android.webkit.WebView;
 import android.webkit.WebSettings;
@@ -17,14 +18,19 @@ import androidx.core.content.ContextCompat;
 
 public class MainActivity extends AppCompatActivity {
     private static final int PERMISSION_REQUEST_CODE = 100;
-    private static final int SPLASH_DURATION = 3000;
+    private static final int MIN_SPLASH_DURATION = 1000;
     private static final int ALL_FILES_ACCESS_REQUEST = 101;
     private WebView webView;
+    private long splashStartTime;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_splash);
+        splashStartTime = SystemClock.uptimeMillis();
+
+        // Reading our own snapshot needs no permission, so start it under the splash
+        LibraryRepository.getInstance(this).loadSnapshot(null);
 
         setupWebView();
         checkPermissions();
@@ -138,11 +144,16 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void proceedToApp() {
-        new Handler().postDelayed(() -> {
-            Intent intent = new Intent(MainActivity.this, PlayerActivity.class);
-            startActivity(intent);
-            finish();
-        }, SPLASH_DURATION);
+        LibraryRepository repository = LibraryRepository.getInstance(this);
+        repository.refresh();
+        repository.loadSnapshot(() -> {
+            long shown = SystemClock.uptimeMillis() - splashStartTime;
+            new Handler().postDelayed(() -> {
+                Intent intent = new Intent(MainActivity.this, PlayerActivity.class);
+                startActivity(intent);
+                finish();
+            }, Math.max(0, MIN_SPLASH_DURATION - shown));
+        });
     }
 
     @Override
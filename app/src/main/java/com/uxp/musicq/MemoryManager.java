@@ -1,42 +1,117 @@
 package com.uxp.musicq;
 
-import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.util.Log;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
-public class MemoryManager {
+/**
+ * Process-wide budget for the in-memory caches. Each cache registers itself
+ * and is trimmed to a share of its own maximum when the system reports
+ * memory pressure: a little while memory is getting low with the app in
+ * front, half once its UI is hidden, and everything just before the
+ * process would be killed. Nothing is cleared on a timer and a collection
+ * is never forced; the runtime collects whatever trimming lets go of.
+ */
+public class MemoryManager implements ComponentCallbacks2 {
     private static final String TAG = "MemoryManager";
-    private static long lastCleanup = 0;
-    private static final long CLEANUP_INTERVAL = 60000; // 1 minute
-
-    public static void checkMemory(Context context) {
-        long currentTime = System.currentTimeMillis();
-        if (currentTime - lastCleanup > CLEANUP_INTERVAL) {
-            cleanupMemory();
-            lastCleanup = currentTime;
-            logMemoryUsage(context);
+    private static MemoryManager instance;
+
+    private final List<String> names = new ArrayList<>();
+    private final List<Trimmable> caches = new ArrayList<>();
+
+    public interface Trimmable {
+        /** Bytes held now, or -1 if that can't be measured. */
+        long getSize();
+
+        /** Bytes held when full, or -1 if that can't be measured. */
+        long getMaxSize();
+
+        /**
+         * Lets go of entries, least recently used first, until at most
+         * {@code maxBytes} are held. Caches that can't be measured are
+         * asked for 0 at every level.
+         */
+        void trimToSize(long maxBytes);
+    }
+
+    private MemoryManager(Context context) {
+        context.registerComponentCallbacks(this);
+        // Its caches are static, so there's no instance to register them
+        register("album art", AlbumArtLoader.trimmable);
+    }
+
+    public static synchronized MemoryManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new MemoryManager(context.getApplicationContext());
         }
+        return instance;
     }
 
-    private static void cleanupMemory() {
-        System.gc();
-        AlbumArtLoader.clearCache();
+    public synchronized void register(String name, Trimmable cache) {
+        names.add(name);
+        caches.add(cache);
     }
 
-    private static void logMemoryUsage(Context context) {
-        ActivityManager.MemoryInfo memInfo = new ActivityManager.MemoryInfo();
-        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
-        activityManager.getMemoryInfo(memInfo);
+    @Override
+    public void onTrimMemory(int level) {
+        float keep = keepFraction(level);
+        if (keep >= 1) return;
 
-        Runtime runtime = Runtime.getRuntime();
-        long usedMemory = (runtime.totalMemory() - runtime.freeMemory()) / 1048576L;
+        trim(keep);
+        Log.i(TAG, "Trimmed to " + Math.round(keep * 100) + "% for level " + level + ": " + describe());
+    }
 
-        Log.d(TAG, "Memory usage: " + usedMemory + " MB");
+    @Override
+    public void onLowMemory() {
+        trim(0);
+        Log.w(TAG, "Low memory, caches emptied: " + describe());
     }
 
-    public static void onLowMemory() {
-        Log.w(TAG, "Low memory - clearing cache");
-        AlbumArtLoader.clearCache();
-        System.gc();
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    /**
+     * Share of each cache's maximum to keep. The running levels are the most
+     * urgent for a foreground app, since it can't be killed to make room.
+     */
+    private static float keepFraction(int level) {
+        if (level >= TRIM_MEMORY_COMPLETE) return 0;
+        if (level >= TRIM_MEMORY_MODERATE) return 0.25f;
+        if (level >= TRIM_MEMORY_UI_HIDDEN) return 0.5f;
+        if (level >= TRIM_MEMORY_RUNNING_CRITICAL) return 0.25f;
+        if (level >= TRIM_MEMORY_RUNNING_LOW) return 0.5f;
+        if (level >= TRIM_MEMORY_RUNNING_MODERATE) return 0.75f;
+        return 1;
+    }
+
+    private synchronized void trim(float keep) {
+        for (Trimmable cache : caches) {
+            long maxSize = cache.getMaxSize();
+            cache.trimToSize(maxSize >= 0 ? (long) (maxSize * keep) : 0);
+        }
+    }
+
+    /**
+     * How full each cache is, e.g. "album art 12.1 of 48.0 MB, ...".
+     */
+    public synchronized String describe() {
+        StringBuilder report = new StringBuilder();
+        for (int i = 0; i < caches.size(); i++) {
+            if (i > 0) report.append(", ");
+            report.append(names.get(i)).append(' ');
+            long size = caches.get(i).getSize();
+            long maxSize = caches.get(i).getMaxSize();
+            if (size < 0) {
+                report.append("not measured");
+            } else {
+                report.append(String.format(Locale.ROOT, "%.1f of %.1f MB", size / 1048576.0, maxSize / 1048576.0));
+            }
+        }
+        return report.toString();
     }
-}
\ No newline at end of file
+}
@@ -1,17 +1,22 @@
 package com.uxp.musicq;
 
-import android.media.MediaMetadataRetriever;
+import android.content.Intent;
 import android.os.Bundle;
 import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.appcompat.app.AppCompatActivity;
 import com.google.android.material.appbar.MaterialToolbar;
 import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MetadataActivity extends AppCompatActivity {
     private TextView txtTitle, txtArtist, txtAlbum, txtYear, txtGenre, txtDuration,
-            txtBitrate, txtSampleRate, txtFileSize, txtFilePath, txtFormat;
+            txtBitrate, txtSampleRate, txtFileSize, txtFilePath, txtFormat, txtAlbumArtist, txtTrack,
+            txtReplayGain;
     private ImageView imgAlbumArt;
+    private AlbumArtLoader.Request artRequest;
+    private final ExecutorService loader = Executors.newSingleThreadExecutor();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -42,61 +47,84 @@ public class MetadataActivity extends AppCompatActivity {
         txtFileSize = findViewById(R.id.txtFileSize);
         txtFilePath = findViewById(R.id.txtFilePath);
         txtFormat = findViewById(R.id.txtFormat);
+        txtAlbumArtist = findViewById(R.id.txtAlbumArtist);
+        txtTrack = findViewById(R.id.txtTrack);
+        txtReplayGain = findViewById(R.id.txtReplayGain);
     }
 
     private void loadMetadata() {
-        String filePath = getIntent().getStringExtra("file_path");
-        long albumId = getIntent().getLongExtra("album_id", -1);
+        Intent intent = getIntent();
+        String filePath = intent.getStringExtra("file_path");
+        long albumId = intent.getLongExtra("album_id", -1);
 
         if (filePath == null) return;
 
-        AlbumArtLoader.loadAlbumArt(this, filePath, imgAlbumArt);
-
-        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
-        try {
-            retriever.setDataSource(filePath);
-
-            txtTitle.setText(getMetadata(retriever, MediaMetadataRetriever.METADATA_KEY_TITLE, "Unknown"));
-            txtArtist.setText(getMetadata(retriever, MediaMetadataRetriever.METADATA_KEY_ARTIST, "Unknown"));
-            txtAlbum.setText(getMetadata(retriever, MediaMetadataRetriever.METADATA_KEY_ALBUM, "Unknown"));
-            txtYear.setText(getMetadata(retriever, MediaMetadataRetriever.METADATA_KEY_YEAR, "Unknown"));
-            txtGenre.setText(getMetadata(retriever, MediaMetadataRetriever.METADATA_KEY_GENRE, "Unknown"));
-
-            String duration = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
-            if (duration != null) {
-                long ms = Long.parseLong(duration);
-                txtDuration.setText(formatDuration(ms));
-            }
-
-            String bitrate = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_BITRATE);
-            if (bitrate != null) {
-                txtBitrate.setText((Integer.parseInt(bitrate) / 1000) + " kbps");
-            }
-
-            String sampleRate = getMetadata(retriever, MediaMetadataRetriever.METADATA_KEY_SAMPLERATE, "Unknown");
-            if (!sampleRate.equals("Unknown")) {
-                txtSampleRate.setText((Integer.parseInt(sampleRate) / 1000) + " kHz");
-            }
-
-            File file = new File(filePath);
-            txtFileSize.setText(formatFileSize(file.length()));
-            txtFilePath.setText(filePath);
-            txtFormat.setText(filePath.substring(filePath.lastIndexOf(".") + 1).toUpperCase());
-
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            try {
-                retriever.release();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        artRequest = AlbumArtLoader.loadAlbumArt(this, albumId, filePath,
+                AlbumArtLoader.ArtSize.PLAYER, imgAlbumArt);
+
+        // From the library, so shown straight away
+        txtTitle.setText(orUnknown(intent.getStringExtra("title")));
+        txtArtist.setText(orUnknown(intent.getStringExtra("artist")));
+        txtAlbum.setText(orUnknown(intent.getStringExtra("album")));
+        long duration = intent.getLongExtra("duration", 0);
+        if (duration > 0) {
+            txtDuration.setText(formatDuration(duration));
+        }
+        txtFilePath.setText(filePath);
+        txtFormat.setText(filePath.substring(filePath.lastIndexOf(".") + 1).toUpperCase());
+
+        // The rest comes from the tag cache, or the file if the scan hasn't reached it
+        TagScanner tagScanner = TagScanner.getInstance(this);
+        loader.execute(() -> {
+            TagInfo tags = tagScanner.getTags(filePath);
+            long fileSize = new File(filePath).length();
+            runOnUiThread(() -> {
+                if (!isDestroyed()) {
+                    showTags(tags, fileSize);
+                }
+            });
+        });
+    }
+
+    private void showTags(TagInfo tags, long fileSize) {
+        txtFileSize.setText(formatFileSize(fileSize));
+        if (tags == null) return;
+
+        txtYear.setText(orUnknown(tags.getYear()));
+        txtGenre.setText(orUnknown(tags.getGenre()));
+        txtAlbumArtist.setText(orUnknown(tags.getAlbumArtist()));
+        if (tags.getTrack() > 0) {
+            txtTrack.setText(tags.getDisc() > 0
+                    ? tags.getTrack() + " (disc " + tags.getDisc() + ")"
+                    : String.valueOf(tags.getTrack()));
+        }
+        txtReplayGain.setText(formatGain(tags.getTrackGain(), tags.getAlbumGain()));
+        if (tags.getBitrate() > 0) {
+            txtBitrate.setText(tags.getBitrate() + " kbps");
+        }
+        if (tags.getSampleRate() > 0) {
+            txtSampleRate.setText((tags.getSampleRate() / 1000) + " kHz");
         }
     }
 
-    private String getMetadata(MediaMetadataRetriever retriever, int key, String defaultValue) {
-        String value = retriever.extractMetadata(key);
-        return value != null ? value : defaultValue;
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        loader.shutdown();
+        if (artRequest != null) {
+            artRequest.cancel();
+        }
+    }
+
+    private String orUnknown(String value) {
+        return value != null ? value : "Unknown";
+    }
+
+    private String formatGain(float trackGain, float albumGain) {
+        if (Float.isNaN(trackGain) && Float.isNaN(albumGain)) return "None";
+        if (Float.isNaN(albumGain)) return String.format("%+.2f dB track", trackGain);
+        if (Float.isNaN(trackGain)) return String.format("%+.2f dB album", albumGain);
+        return String.format("%+.2f dB track, %+.2f dB album", trackGain, albumGain);
     }
 
     private String formatDuration(long ms) {
@@ -4,193 +4,298 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Build;
 import android.provider.MediaStore;
 import android.util.Log;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class MusicLoader {
     private Context context;
     private static final String TAG = "MusicLoader";
+    private static final String IS_MUSIC = MediaStore.Audio.Media.IS_MUSIC + " != 0";
+    private static final int MAX_IDS_PER_QUERY = 500;
+    private static final String TITLE_ORDER = MediaStore.Audio.Media.TITLE + " ASC, " +
+            MediaStore.Audio.Media._ID + " ASC";
+
+    private static final String[] BASE_PROJECTION = {
+            MediaStore.Audio.Media._ID,
+            MediaStore.Audio.Media.TITLE,
+            MediaStore.Audio.Media.ARTIST,
+            MediaStore.Audio.Media.ALBUM,
+            MediaStore.Audio.Media.ALBUM_ID,
+            MediaStore.Audio.Media.DATA,
+            MediaStore.Audio.Media.DURATION,
+            MediaStore.Audio.Media.TRACK,
+            MediaStore.Audio.Media.DATE_ADDED
+    };
+
+    // GENRE is a column of the audio table from API 30; before that it has to be joined by hand
+    private static final String[] SONG_PROJECTION = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+            ? withColumn(BASE_PROJECTION, MediaStore.Audio.Media.GENRE)
+            : BASE_PROJECTION;
+
+    private Map<Long, String> legacyGenres;
 
     public MusicLoader(Context context) {
         this.context = context;
     }
 
+    private static String[] withColumn(String[] projection, String column) {
+        String[] result = Arrays.copyOf(projection, projection.length + 1);
+        result[projection.length] = column;
+        return result;
+    }
+
     public List<Song> loadSongs() {
-        List<Song> songs = new ArrayList<>();
-        ContentResolver contentResolver = context.getContentResolver();
-        Uri uri = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
+        List<Song> songs = querySongs(IS_MUSIC, null, TITLE_ORDER);
+        if (songs == null) {
+            songs = new ArrayList<>();
+        }
 
-        String[] projection = {
-                MediaStore.Audio.Media._ID,
-                MediaStore.Audio.Media.TITLE,
-                MediaStore.Audio.Media.ARTIST,
-                MediaStore.Audio.Media.ALBUM,
-                MediaStore.Audio.Media.ALBUM_ID,
-                MediaStore.Audio.Media.DATA,
-                MediaStore.Audio.Media.DURATION
-        };
+        Log.d(TAG, "Loaded " + songs.size() + " songs");
+        return songs;
+    }
 
-        String selection = MediaStore.Audio.Media.IS_MUSIC + " != 0";
-        String sortOrder = MediaStore.Audio.Media.TITLE + " ASC";
+    /**
+     * Reads the whole library in title order from a single cursor, handing
+     * the songs to the listener in pages as they come off it: a short first
+     * page so the list can show something straight away, then larger ones.
+     * Returns false if the query failed, leaving the pages passed on so far
+     * incomplete.
+     */
+    public boolean loadSongsInPages(int firstPageSize, int pageSize, LibrarySync.PageListener listener) {
+        ContentResolver contentResolver = context.getContentResolver();
+        Uri uri = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
 
         Cursor cursor = null;
         try {
-            cursor = contentResolver.query(uri, projection, selection, null, sortOrder);
-
-            if (cursor != null && cursor.moveToFirst()) {
-                int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
-                int titleColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.TITLE);
-                int artistColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ARTIST);
-                int albumColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM);
-                int albumIdColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM_ID);
-                int pathColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATA);
-                int durationColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DURATION);
-
-                do {
-                    try {
-                        long id = cursor.getLong(idColumn);
-                        String title = cursor.getString(titleColumn);
-                        String artist = cursor.getString(artistColumn);
-                        String album = cursor.getString(albumColumn);
-                        long albumId = cursor.getLong(albumIdColumn);
-                        String path = cursor.getString(pathColumn);
-                        long duration = cursor.getLong(durationColumn);
-
-                        Song song = new Song(id, title, artist, album, albumId, path, duration);
-                        songs.add(song);
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error loading individual song", e);
-                    }
-                } while (cursor.moveToNext());
+            cursor = contentResolver.query(uri, SONG_PROJECTION, IS_MUSIC, null, TITLE_ORDER);
+            if (cursor == null) {
+                return false;
             }
+            readSongs(cursor, firstPageSize, pageSize, listener);
+            return true;
         } catch (Exception e) {
             Log.e(TAG, "Error loading songs", e);
+            return false;
         } finally {
             if (cursor != null) {
                 cursor.close();
             }
         }
+    }
 
-        Log.d(TAG, "Loaded " + songs.size() + " songs");
-        return songs;
+    /**
+     * Loads only the rows whose GENERATION_MODIFIED (API 30+) or DATE_MODIFIED
+     * is newer than the given marker; null if the query failed.
+     */
+    public List<Song> loadSongsChangedSince(long marker, boolean useGeneration) {
+        String column = useGeneration
+                ? MediaStore.MediaColumns.GENERATION_MODIFIED
+                : MediaStore.Audio.Media.DATE_MODIFIED;
+        // DATE_MODIFIED has one second resolution, so re-read the boundary second
+        String selection = IS_MUSIC + " AND " + column + (useGeneration ? " > ?" : " >= ?");
+        String[] selectionArgs = {String.valueOf(marker)};
+        return querySongs(selection, selectionArgs, null);
     }
 
-    public List<Song> loadSongsByAlbum(long albumId) {
+    /**
+     * Null if any of the queries failed.
+     */
+    public List<Song> loadSongsById(Collection<Long> ids) {
         List<Song> songs = new ArrayList<>();
+        Iterator<Long> iterator = ids.iterator();
+
+        while (iterator.hasNext()) {
+            StringBuilder placeholders = new StringBuilder();
+            List<String> args = new ArrayList<>();
+            while (iterator.hasNext() && args.size() < MAX_IDS_PER_QUERY) {
+                placeholders.append(args.isEmpty() ? "?" : ",?");
+                args.add(String.valueOf(iterator.next()));
+            }
+
+            String selection = IS_MUSIC + " AND " + MediaStore.Audio.Media._ID +
+                    " IN (" + placeholders + ")";
+            List<Song> found = querySongs(selection, args.toArray(new String[0]), null);
+            if (found == null) {
+                return null;
+            }
+            songs.addAll(found);
+        }
+
+        return songs;
+    }
+
+    /**
+     * Reads just the ID column of every music row; cheap enough to run on each
+     * sync so deletions can be found by set difference.
+     */
+    public Set<Long> loadSongIds() {
+        Set<Long> ids = new HashSet<>();
         ContentResolver contentResolver = context.getContentResolver();
         Uri uri = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
-
-        String[] projection = {
-                MediaStore.Audio.Media._ID,
-                MediaStore.Audio.Media.TITLE,
-                MediaStore.Audio.Media.ARTIST,
-                MediaStore.Audio.Media.ALBUM,
-                MediaStore.Audio.Media.ALBUM_ID,
-                MediaStore.Audio.Media.DATA,
-                MediaStore.Audio.Media.DURATION
-        };
-
-        String selection = MediaStore.Audio.Media.ALBUM_ID + " = ? AND " +
-                MediaStore.Audio.Media.IS_MUSIC + " != 0";
-        String[] selectionArgs = {String.valueOf(albumId)};
-        String sortOrder = MediaStore.Audio.Media.TRACK + " ASC";
+        String[] projection = {MediaStore.Audio.Media._ID};
 
         Cursor cursor = null;
         try {
-            cursor = contentResolver.query(uri, projection, selection, selectionArgs, sortOrder);
-
-            if (cursor != null && cursor.moveToFirst()) {
-                int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
-                int titleColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.TITLE);
-                int artistColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ARTIST);
-                int albumColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM);
-                int albumIdColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM_ID);
-                int pathColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATA);
-                int durationColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DURATION);
-
-                do {
-                    try {
-                        long id = cursor.getLong(idColumn);
-                        String title = cursor.getString(titleColumn);
-                        String artist = cursor.getString(artistColumn);
-                        String album = cursor.getString(albumColumn);
-                        long albId = cursor.getLong(albumIdColumn);
-                        String path = cursor.getString(pathColumn);
-                        long duration = cursor.getLong(durationColumn);
-
-                        Song song = new Song(id, title, artist, album, albId, path, duration);
-                        songs.add(song);
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error loading song from album", e);
-                    }
-                } while (cursor.moveToNext());
+            cursor = contentResolver.query(uri, projection, IS_MUSIC, null, null);
+            if (cursor == null) {
+                return null;
+            }
+            int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(idColumn));
             }
         } catch (Exception e) {
-            Log.e(TAG, "Error loading album songs", e);
+            Log.e(TAG, "Error loading song ids", e);
+            return null;
         } finally {
             if (cursor != null) {
                 cursor.close();
             }
         }
 
-        return songs;
+        return ids;
     }
 
-    public List<Album> loadAlbums() {
-        List<Album> albums = new ArrayList<>();
+    private List<Song> querySongs(String selection, String[] selectionArgs, String sortOrder) {
         ContentResolver contentResolver = context.getContentResolver();
-        Uri uri = MediaStore.Audio.Albums.EXTERNAL_CONTENT_URI;
-
-        String[] projection = {
-                MediaStore.Audio.Albums._ID,
-                MediaStore.Audio.Albums.ALBUM,
-                MediaStore.Audio.Albums.ARTIST,
-                MediaStore.Audio.Albums.NUMBER_OF_SONGS
-        };
+        Uri uri = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
 
         Cursor cursor = null;
         try {
-            cursor = contentResolver.query(uri, projection, null, null,
-                    MediaStore.Audio.Albums.ALBUM + " ASC");
-
-            if (cursor != null && cursor.moveToFirst()) {
-                int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Albums._ID);
-                int albumColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Albums.ALBUM);
-                int artistColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Albums.ARTIST);
-                int songsColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Albums.NUMBER_OF_SONGS);
-
-                do {
-                    try {
-                        long id = cursor.getLong(idColumn);
-                        String album = cursor.getString(albumColumn);
-                        String artist = cursor.getString(artistColumn);
-                        int songCount = cursor.getInt(songsColumn);
-
-                        Album albumObj = new Album(id, album, artist, songCount);
-
-                        // Get first song path for album art
-                        List<Song> albumSongs = loadSongsByAlbum(id);
-                        if (!albumSongs.isEmpty()) {
-                            albumObj.setFirstSongPath(albumSongs.get(0).getPath());
-                        }
-
-                        albums.add(albumObj);
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error loading individual album", e);
-                    }
-                } while (cursor.moveToNext());
-            }
+            cursor = contentResolver.query(uri, SONG_PROJECTION, selection, selectionArgs, sortOrder);
+            return cursor != null ? readSongs(cursor) : null;
         } catch (Exception e) {
-            Log.e(TAG, "Error loading albums", e);
+            Log.e(TAG, "Error loading songs", e);
+            return null;
         } finally {
             if (cursor != null) {
                 cursor.close();
             }
         }
+    }
+
+    private List<Song> readSongs(Cursor cursor) {
+        List<Song> songs = new ArrayList<>();
+        readSongs(cursor, Integer.MAX_VALUE, Integer.MAX_VALUE, songs::addAll);
+        return songs;
+    }
+
+    /**
+     * Reads every row of the cursor, passing the songs on in pages of
+     * {@code firstPageSize}, then {@code pageSize}, with whatever is left last.
+     */
+    private void readSongs(Cursor cursor, int firstPageSize, int pageSize,
+                           LibrarySync.PageListener listener) {
+        if (cursor == null || !cursor.moveToFirst()) {
+            return;
+        }
+
+        int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
+        int titleColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.TITLE);
+        int artistColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ARTIST);
+        int albumColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM);
+        int albumIdColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM_ID);
+        int pathColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATA);
+        int durationColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DURATION);
+        int trackColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.TRACK);
+        int dateAddedColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATE_ADDED);
+        int genreColumn = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.GENRE) : -1;
+        Map<Long, String> genres = genreColumn < 0 ? loadLegacyGenres() : null;
+        List<Song> page = new ArrayList<>();
+        int limit = firstPageSize;
+
+        do {
+            try {
+                long id = cursor.getLong(idColumn);
+                String title = cursor.getString(titleColumn);
+                String artist = cursor.getString(artistColumn);
+                String album = cursor.getString(albumColumn);
+                long albumId = cursor.getLong(albumIdColumn);
+                String path = cursor.getString(pathColumn);
+                long duration = cursor.getLong(durationColumn);
+                int track = cursor.getInt(trackColumn);
+                long dateAdded = cursor.getLong(dateAddedColumn);
+                String genre = genreColumn >= 0 ? cursor.getString(genreColumn) : genres.get(id);
+
+                Song song = new Song(id, title, artist, album, albumId, path, duration, track,
+                        dateAdded, genre);
+                page.add(song);
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading individual song", e);
+            }
+
+            if (page.size() >= limit) {
+                listener.onPage(page);
+                page = new ArrayList<>();
+                limit = pageSize;
+            }
+        } while (cursor.moveToNext());
+
+        if (!page.isEmpty()) {
+            listener.onPage(page);
+        }
+    }
+
+    /**
+     * Song id to genre name for API 29 and lower, read once per loader with
+     * one members query per genre rather than one query per song.
+     */
+    private Map<Long, String> loadLegacyGenres() {
+        if (legacyGenres != null) {
+            return legacyGenres;
+        }
+        legacyGenres = new HashMap<>();
+
+        ContentResolver contentResolver = context.getContentResolver();
+        String[] genreProjection = {MediaStore.Audio.Genres._ID, MediaStore.Audio.Genres.NAME};
+        String[] memberProjection = {MediaStore.Audio.Genres.Members.AUDIO_ID};
+
+        Cursor genreCursor = null;
+        try {
+            genreCursor = contentResolver.query(MediaStore.Audio.Genres.EXTERNAL_CONTENT_URI,
+                    genreProjection, null, null, null);
+            if (genreCursor == null) {
+                return legacyGenres;
+            }
+
+            while (genreCursor.moveToNext()) {
+                Cursor memberCursor = null;
+                try {
+                    long genreId = genreCursor.getLong(0);
+                    String name = genreCursor.getString(1);
+                    Uri membersUri = MediaStore.Audio.Genres.Members.getContentUri("external", genreId);
+                    memberCursor = contentResolver.query(membersUri, memberProjection, null, null, null);
+                    while (memberCursor != null && memberCursor.moveToNext()) {
+                        legacyGenres.put(memberCursor.getLong(0), name);
+                    }
+                } catch (Exception e) {
+                    // Only this genre's songs go without one
+                    Log.e(TAG, "Error loading genre members", e);
+                } finally {
+                    if (memberCursor != null) {
+                        memberCursor.close();
+                    }
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error loading genres", e);
+        } finally {
+            if (genreCursor != null) {
+                genreCursor.close();
+            }
+        }
 
-        Log.d(TAG, "Loaded " + albums.size() + " albums");
-        return albums;
+        return legacyGenres;
     }
-}
\ No newline at end of file
+}
@@ -18,7 +18,9 @@ import android.media.session.MediaSession;
 import android.media.session.PlaybackState;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.PowerManager;
 import android.support.v4.media.session.MediaSessionCompat;
 import android.util.Log;
@@ -30,19 +32,51 @@ import java.util.Random;
 
 public class MusicService extends Service {
     private MediaPlayer mediaPlayer;
-    private List<Song> songList;
+    // Prepared with the song after the current one and chained with setNextMediaPlayer, for gapless playback
+    private MediaPlayer nextPlayer;
+    private int nextPosition = -1;
+    private long nextSongId = -1;
+    private boolean nextPrepared = false;
+    // nextPlayer is chained to mediaPlayer and starts when it ends
+    private boolean chained = false;
+    // The previous song's player while it fades out under the current one
+    private MediaPlayer fadingPlayer;
+    private Crossfader crossfader;
+    private int crossfadeMs;
+    // mediaPlayer holds the current song, prepared
+    private boolean prepared = false;
+    // Shared by every player, so the effects attached to it carry over from song to song
+    private int audioSessionId;
+    private final PlaybackQueue queue = new PlaybackQueue();
     private int currentPosition = 0;
     private final IBinder binder = new MusicBinder();
     private boolean shuffle = false;
     private boolean repeat = false;
     private Random random = new Random();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable crossfadeCheck = this::scheduleCrossfade;
     private static final String TAG = "MusicService";
     private static final String CHANNEL_ID = "harmoniq_playback";
     private static final int NOTIFICATION_ID = 1;
+    // Songs after the current one whose art is decoded ahead of time
+    private static final int UPCOMING_ART = 2;
     private MediaSession mediaSession;
     private SharedPreferences prefs;
     private PowerManager.WakeLock wakeLock;
     private boolean batterySaverMode = false;
+    private boolean gapless = true;
+    private final List<AlbumArtLoader.Request> upcomingArt = new ArrayList<>();
+    // Loaded once per song; the previous song's art is shown until the new one's arrives
+    private Bitmap currentArt;
+    private long currentArtSongId = -1;
+    private AlbumArtLoader.Request artRequest;
+    // What the session was last given, so play, pause and seek don't send the art again
+    private long publishedSongId = -1;
+    private Bitmap publishedArt;
+    private boolean preparing = false;
+    private boolean notificationShown = false;
+    // Picked when the current song starts, so its art can be warmed, or queued with playAfterCurrent; -1 if not shuffling
+    private int nextShufflePosition = -1;
 
     private Equalizer equalizer;
     private BassBoost bassBoost;
@@ -71,40 +105,279 @@ public class MusicService extends Service {
     public void onCreate() {
         super.onCreate();
         prefs = getSharedPreferences("harmoniq_settings", MODE_PRIVATE);
+        gapless = prefs.getBoolean("gapless", true);
+        crossfadeMs = prefs.getInt("crossfade", 0) * 1000;
+        crossfader = new Crossfader();
+        // Playback can outlive every screen; caches are still trimmed under memory pressure
+        MemoryManager.getInstance(this);
         createNotificationChannel();
         initMediaSession();
         initWakeLock();
 
         try {
-            mediaPlayer = new MediaPlayer();
-            mediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
-            songList = new ArrayList<>();
+            mediaPlayer = createPlayer();
+            audioSessionId = mediaPlayer.getAudioSessionId();
+        } catch (Exception e) {
+            Log.e(TAG, "Error initializing", e);
+        }
+    }
 
-            mediaPlayer.setOnCompletionListener(mp -> {
-                if (repeat) {
-                    play();
-                } else {
-                    playNext();
+    private MediaPlayer createPlayer() {
+        MediaPlayer player = new MediaPlayer();
+        player.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        player.setOnCompletionListener(this::onCompletion);
+        player.setOnErrorListener(this::onError);
+        player.setOnSeekCompleteListener(mp -> {
+            if (mp == mediaPlayer) scheduleCrossfade();
+        });
+        return player;
+    }
+
+    private void onPrepared(MediaPlayer mp) {
+        preparing = false;
+        prepared = true;
+        applyAudioSettings();
+        mp.start();
+        updateMediaSession();
+        showNotification();
+        notifyPlaybackStateChanged(true);
+        prepareNext();
+    }
+
+    private void onCompletion(MediaPlayer mp) {
+        if (mp != mediaPlayer) return;
+
+        if (nextPrepared) {
+            if (!chained) {
+                // The song ended before its fade was due; cut over instead
+                nextPlayer.start();
+            }
+            // The next player started the moment this one ended
+            advanceToNext();
+        } else if (repeat) {
+            play();
+        } else {
+            playNext();
+        }
+    }
+
+    private boolean onError(MediaPlayer mp, int what, int extra) {
+        if (mp == fadingPlayer) {
+            endCrossfade();
+            return true;
+        }
+        if (mp == nextPlayer) {
+            Log.e(TAG, "Error preparing next song: " + what);
+            cancelNext();
+            // Handled; the current song plays on and the next one is started the usual way
+            return true;
+        }
+        Log.e(TAG, "MediaPlayer error: " + what);
+        // Unchained first: the completion that follows moves on the usual way
+        cancelNext();
+        preparing = false;
+        prepared = false;
+        return false;
+    }
+
+    /**
+     * Prepares the song to play after the current one on the second player:
+     * playNext's pick, or the current song again with repeat. With a
+     * crossfade it's started when the current song nears its end, otherwise
+     * it's chained to the current one, so it starts without a gap.
+     */
+    private void prepareNext() {
+        cancelNext();
+        // While a fade is in progress the second player is the one fading out
+        if (!prepared || fadingPlayer != null || (crossfadeMs == 0 && !gapless)) return;
+
+        int position = repeat ? currentPosition : upcomingPosition();
+        if (position < 0) return;
+        if (nextPlayer == null) {
+            nextPlayer = createPlayer();
+        }
+
+        try {
+            nextPlayer.setAudioSessionId(audioSessionId);
+            Song song = queue.get(position);
+            nextPlayer.setDataSource(song.getPath());
+            nextPlayer.setOnPreparedListener(mp -> {
+                if (!prepared) return;
+                if (crossfadeMs > 0) {
+                    // Started silent once the current song is within the fade of its end
+                    mp.setVolume(0, 0);
+                    nextPrepared = true;
+                    scheduleCrossfade();
+                    return;
+                }
+                mp.setVolume(volume(), volume());
+                try {
+                    mediaPlayer.setNextMediaPlayer(mp);
+                    nextPrepared = true;
+                    chained = true;
+                } catch (IllegalStateException e) {
+                    // The current song ended first and is being moved on from
                 }
             });
+            nextPosition = position;
+            nextSongId = song.getId();
+            nextPlayer.prepareAsync();
+        } catch (IOException | IllegalStateException e) {
+            Log.e(TAG, "Error preparing next song", e);
+            cancelNext();
+        }
+    }
 
-            mediaPlayer.setOnErrorListener((mp, what, extra) -> {
-                Log.e(TAG, "MediaPlayer error: " + what);
-                return false;
-            });
+    private void cancelNext() {
+        handler.removeCallbacks(crossfadeCheck);
+        if (nextPlayer == null) return;
+        if (chained) {
+            try {
+                mediaPlayer.setNextMediaPlayer(null);
+            } catch (IllegalStateException e) {
+                // Already ended
+            }
+        }
+        nextPlayer.reset();
+        nextPrepared = false;
+        chained = false;
+        nextPosition = -1;
+        nextSongId = -1;
+    }
 
-            mediaPlayer.setOnPreparedListener(mp -> {
-                applyAudioSettings();
-                mp.start();
-                updateMediaSession();
-                showNotification();
-                notifyPlaybackStateChanged(true);
-            });
-        } catch (Exception e) {
-            Log.e(TAG, "Error initializing", e);
+    /**
+     * Starts the fade if the current song is within it of its end, or
+     * checks again when it will be. Seeking and resuming move the end, so
+     * both check again.
+     */
+    private void scheduleCrossfade() {
+        handler.removeCallbacks(crossfadeCheck);
+        if (!nextPrepared || chained || !isPlaying()) return;
+
+        try {
+            long fadeMs = Math.min(crossfadeMs, Math.min(mediaPlayer.getDuration(), nextPlayer.getDuration()) / 2);
+            long remaining = (long) ((mediaPlayer.getDuration() - mediaPlayer.getCurrentPosition()) / playbackSpeed());
+            if (remaining > fadeMs + 20) {
+                handler.postDelayed(crossfadeCheck, remaining - fadeMs);
+            } else {
+                startCrossfade(Math.max(0, remaining));
+            }
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Error scheduling crossfade", e);
         }
     }
 
+    /**
+     * Starts the next song under the current one, which fades out over
+     * {@code fadeMs} while the next fades in. The next song is current
+     * from here on.
+     */
+    private void startCrossfade(long fadeMs) {
+        MediaPlayer outgoing = mediaPlayer;
+        nextPlayer.start();
+        fadingPlayer = outgoing;
+        mediaPlayer = nextPlayer;
+        nextPlayer = null;
+        nextPrepared = false;
+        currentPosition = nextPosition;
+        nextPosition = -1;
+
+        applyAudioSettings();
+        crossfader.start(outgoing, mediaPlayer, fadeMs, volume(), batterySaverMode, () -> {
+            if (fadingPlayer == outgoing) {
+                endCrossfade();
+            }
+        });
+        onSongAdvanced();
+    }
+
+    /**
+     * Ends the fade in progress, right away if it's still running, and
+     * keeps the faded-out player for the song after.
+     */
+    private void endCrossfade() {
+        if (fadingPlayer == null) return;
+        stopCrossfade();
+        prepareNext();
+    }
+
+    private void stopCrossfade() {
+        if (fadingPlayer == null) return;
+        crossfader.cancel();
+        fadingPlayer.reset();
+        nextPlayer = fadingPlayer;
+        fadingPlayer = null;
+    }
+
+    /**
+     * The chained player has taken over; it becomes the current one and
+     * the finished player is kept for the song after.
+     */
+    private void advanceToNext() {
+        MediaPlayer finished = mediaPlayer;
+        mediaPlayer = nextPlayer;
+        nextPlayer = finished;
+        nextPlayer.reset();
+        nextPrepared = false;
+        chained = false;
+        currentPosition = nextPosition;
+        nextPosition = -1;
+
+        // Speed and pitch can only be set once it's playing; setting them on a prepared player starts it
+        applyAudioSettings();
+        onSongAdvanced();
+    }
+
+    private void onSongAdvanced() {
+        Song song = getCurrentSong();
+        loadCurrentArt(song);
+        notifySongChanged(song);
+        pickNextShufflePosition();
+        warmUpcomingArt();
+        updateMediaSession();
+        showNotification();
+        prepareNext();
+    }
+
+    /**
+     * The position playNext goes to, or -1 if there is none.
+     */
+    private int upcomingPosition() {
+        if (queue.isEmpty()) return -1;
+        if (shuffle) {
+            return nextShufflePosition >= 0 && nextShufflePosition < queue.size() ? nextShufflePosition : -1;
+        }
+        return (currentPosition + 1) % queue.size();
+    }
+
+    public void setGapless(boolean enabled) {
+        if (gapless == enabled) return;
+        gapless = enabled;
+        prepareNext();
+    }
+
+    /**
+     * Length of the crossfade between songs; 0 turns it off, leaving
+     * gapless playback if that's on.
+     */
+    public void setCrossfade(int seconds) {
+        if (crossfadeMs == seconds * 1000) return;
+        crossfadeMs = seconds * 1000;
+        prepareNext();
+    }
+
+    private float volume() {
+        return prefs.getInt("volume", 100) / 100.0f;
+    }
+
+    /**
+     * How much faster than real time songs play, to time the fade by.
+     */
+    private float playbackSpeed() {
+        if (batterySaverMode || Build.VERSION.SDK_INT < Build.VERSION_CODES.M) return 1;
+        return prefs.getFloat("speed", 1.0f);
+    }
+
     private void initWakeLock() {
         PowerManager pm = (PowerManager) getSystemService(POWER_SERVICE);
         wakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "HarmoniQ::MusicPlayback");
@@ -170,18 +443,7 @@ public class MusicService extends Service {
         Song song = getCurrentSong();
         if (song == null) return;
 
-        MediaMetadata.Builder builder = new MediaMetadata.Builder()
-                .putString(MediaMetadata.METADATA_KEY_TITLE, song.getTitle())
-                .putString(MediaMetadata.METADATA_KEY_ARTIST, song.getArtist())
-                .putString(MediaMetadata.METADATA_KEY_ALBUM, song.getAlbum())
-                .putLong(MediaMetadata.METADATA_KEY_DURATION, song.getDuration());
-
-        Bitmap albumArt = AlbumArtLoader.getAlbumArt(this, song.getPath());
-        if (albumArt != null) {
-            builder.putBitmap(MediaMetadata.METADATA_KEY_ALBUM_ART, albumArt);
-        }
-
-        mediaSession.setMetadata(builder.build());
+        publishMetadata(song);
 
         PlaybackState.Builder stateBuilder = new PlaybackState.Builder()
                 .setActions(PlaybackState.ACTION_PLAY | PlaybackState.ACTION_PAUSE |
@@ -193,11 +455,54 @@ public class MusicService extends Service {
         mediaSession.setPlaybackState(stateBuilder.build());
     }
 
+    private void publishMetadata(Song song) {
+        if (song.getId() == publishedSongId && currentArt == publishedArt) return;
+        publishedSongId = song.getId();
+        publishedArt = currentArt;
+
+        MediaMetadata.Builder builder = new MediaMetadata.Builder()
+                .putString(MediaMetadata.METADATA_KEY_TITLE, song.getTitle())
+                .putString(MediaMetadata.METADATA_KEY_ARTIST, song.getArtist())
+                .putString(MediaMetadata.METADATA_KEY_ALBUM, song.getAlbum())
+                .putLong(MediaMetadata.METADATA_KEY_DURATION, song.getDuration());
+        if (currentArt != null) {
+            builder.putBitmap(MediaMetadata.METADATA_KEY_ALBUM_ART, currentArt);
+        }
+        mediaSession.setMetadata(builder.build());
+    }
+
+    /**
+     * Starts loading the song's art unless it's already loaded or loading.
+     * The session and notification are updated when it arrives.
+     */
+    private void loadCurrentArt(Song song) {
+        if (song.getId() == currentArtSongId) return;
+        currentArtSongId = song.getId();
+        if (artRequest != null) {
+            artRequest.cancel();
+        }
+        artRequest = AlbumArtLoader.loadAlbumArt(this, song.getAlbumId(), song.getPath(),
+                AlbumArtLoader.ArtSize.NOTIFICATION, bitmap -> onArtLoaded(song, bitmap));
+    }
+
+    private void onArtLoaded(Song song, Bitmap bitmap) {
+        if (song.getId() != currentArtSongId) return;
+        currentArt = bitmap;
+        // While preparing, it's published along with the playing state
+        if (preparing) return;
+
+        publishMetadata(song);
+        if (notificationShown) {
+            showNotification();
+        }
+    }
+
     private void applyAudioSettings() {
         try {
-            int volume = prefs.getInt("volume", 100);
-            float vol = volume / 100.0f;
-            mediaPlayer.setVolume(vol, vol);
+            // While fading in, the crossfader sets it
+            if (fadingPlayer == null) {
+                mediaPlayer.setVolume(volume(), volume());
+            }
 
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
                 float speed = prefs.getFloat("speed", 1.0f);
@@ -309,26 +614,43 @@ public class MusicService extends Service {
         }
     }
 
-    public void setSongList(List<Song> songs) {
-        if (songs != null) {
-            this.songList = new ArrayList<>(songs);
-        }
+    /**
+     * Plays the song at {@code position} in {@code songs}, which becomes the
+     * queue. The list is shared, not copied, so it mustn't be changed
+     * afterwards; the library's lists never are.
+     */
+    public void playSongs(List<Song> songs, int position) {
+        if (songs == null) return;
+        queue.setSongs(songs);
+        playSong(position);
     }
 
+    /**
+     * Plays the song at {@code position} in the queue.
+     */
     public void playSong(int position) {
-        if (songList == null || songList.isEmpty() || position < 0 || position >= songList.size()) {
+        if (queue.isEmpty() || position < 0 || position >= queue.size()) {
             return;
         }
 
         currentPosition = position;
-        Song song = songList.get(position);
+        Song song = queue.get(position);
 
         try {
             if (mediaPlayer != null) {
+                stopCrossfade();
+                cancelNext();
+                prepared = false;
                 mediaPlayer.reset();
+                mediaPlayer.setAudioSessionId(audioSessionId);
                 mediaPlayer.setDataSource(song.getPath());
+                mediaPlayer.setOnPreparedListener(this::onPrepared);
                 mediaPlayer.prepareAsync();
+                preparing = true;
+                loadCurrentArt(song);
                 notifySongChanged(song);
+                pickNextShufflePosition();
+                warmUpcomingArt();
 
                 if (!batterySaverMode && !wakeLock.isHeld()) {
                     wakeLock.acquire();
@@ -348,6 +670,7 @@ public class MusicService extends Service {
                 updateMediaSession();
                 showNotification();
                 notifyPlaybackStateChanged(true);
+                scheduleCrossfade();
 
                 if (!batterySaverMode && !wakeLock.isHeld()) {
                     wakeLock.acquire();
@@ -361,6 +684,9 @@ public class MusicService extends Service {
     public void pause() {
         try {
             if (mediaPlayer != null && mediaPlayer.isPlaying()) {
+                handler.removeCallbacks(crossfadeCheck);
+                // The song fading out isn't resumed
+                endCrossfade();
                 mediaPlayer.pause();
                 updateMediaSession();
                 showNotification();
@@ -376,14 +702,11 @@ public class MusicService extends Service {
     }
 
     public void playNext() {
-        if (songList == null || songList.isEmpty()) return;
+        if (queue.isEmpty()) return;
 
         try {
-            if (shuffle) {
-                currentPosition = random.nextInt(songList.size());
-            } else {
-                currentPosition = (currentPosition + 1) % songList.size();
-            }
+            int position = upcomingPosition();
+            currentPosition = position >= 0 ? position : random.nextInt(queue.size());
             playSong(currentPosition);
         } catch (Exception e) {
             Log.e(TAG, "Error playing next", e);
@@ -391,10 +714,10 @@ public class MusicService extends Service {
     }
 
     public void playPrevious() {
-        if (songList == null || songList.isEmpty()) return;
+        if (queue.isEmpty()) return;
 
         try {
-            currentPosition = (currentPosition - 1 + songList.size()) % songList.size();
+            currentPosition = (currentPosition - 1 + queue.size()) % queue.size();
             playSong(currentPosition);
         } catch (Exception e) {
             Log.e(TAG, "Error playing previous", e);
@@ -422,14 +745,12 @@ public class MusicService extends Service {
         PendingIntent prevPendingIntent = PendingIntent.getService(
                 this, 2, prevIntent, PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
 
-        Bitmap albumArt = AlbumArtLoader.getAlbumArt(this, currentSong.getPath());
-
         Notification notification = new NotificationCompat.Builder(this, CHANNEL_ID)
                 .setSmallIcon(R.drawable.ic_music)
                 .setContentTitle(currentSong.getTitle())
                 .setContentText(currentSong.getArtist())
                 .setSubText(currentSong.getAlbum())
-                .setLargeIcon(albumArt)
+                .setLargeIcon(currentArt)
                 .setContentIntent(pendingIntent)
                 .setOngoing(isPlaying())
                 .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
@@ -443,11 +764,13 @@ public class MusicService extends Service {
                 .build();
 
         startForeground(NOTIFICATION_ID, notification);
+        notificationShown = true;
     }
 
     public void seekTo(int position) {
         try {
             if (mediaPlayer != null) {
+                endCrossfade();
                 mediaPlayer.seekTo(position);
                 updateMediaSession();
             }
@@ -473,24 +796,160 @@ public class MusicService extends Service {
     }
 
     public Song getCurrentSong() {
-        if (songList != null && currentPosition >= 0 && currentPosition < songList.size()) {
-            return songList.get(currentPosition);
+        if (currentPosition >= 0 && currentPosition < queue.size()) {
+            return queue.get(currentPosition);
         }
         return null;
     }
 
     public void setShuffle(boolean shuffle) {
+        if (this.shuffle == shuffle) return;
         this.shuffle = shuffle;
+        if (getCurrentSong() != null) {
+            pickNextShufflePosition();
+            warmUpcomingArt();
+            prepareNext();
+        }
+    }
+
+    /**
+     * Jumps to the song with the given id; false if it isn't in the queue.
+     */
+    public boolean playSongById(long id) {
+        int position = queue.indexOf(id);
+        if (position < 0) return false;
+        playSong(position);
+        return true;
+    }
+
+    /**
+     * Adds the song to the end of the queue.
+     */
+    public void enqueue(Song song) {
+        queue.add(song);
+        onQueueChanged();
+    }
+
+    /**
+     * Puts the song right after the current one, so it plays next even
+     * when shuffling.
+     */
+    public void playAfterCurrent(Song song) {
+        int position = Math.min(currentPosition + 1, queue.size());
+        queue.add(position, song);
+        if (shuffle) {
+            nextShufflePosition = position;
+        }
+        onQueueChanged();
+    }
+
+    public void moveInQueue(int from, int to) {
+        if (from < 0 || from >= queue.size() || to < 0 || to >= queue.size()) return;
+        queue.move(from, to);
+        currentPosition = movedPosition(currentPosition, from, to);
+        nextShufflePosition = movedPosition(nextShufflePosition, from, to);
+        onQueueChanged();
+    }
+
+    /**
+     * Takes the song at {@code position} out of the queue. The song playing
+     * can't be removed; returns false for it.
+     */
+    public boolean removeFromQueue(int position) {
+        if (position < 0 || position >= queue.size() || position == currentPosition) return false;
+        queue.remove(position);
+        if (position < currentPosition) {
+            currentPosition--;
+        }
+        if (position == nextShufflePosition) {
+            pickNextShufflePosition();
+        } else if (position < nextShufflePosition) {
+            nextShufflePosition--;
+        }
+        onQueueChanged();
+        return true;
+    }
+
+    private static int movedPosition(int position, int from, int to) {
+        if (position < 0) return position;
+        if (position == from) return to;
+        if (from < position && to >= position) return position - 1;
+        if (from > position && to <= position) return position + 1;
+        return position;
+    }
+
+    /**
+     * Follows an edit of the queue. The next player is only prepared again
+     * if the edit changed which song comes next.
+     */
+    private void onQueueChanged() {
+        if (getCurrentSong() == null) return;
+        warmUpcomingArt();
+
+        int position = repeat ? currentPosition : upcomingPosition();
+        if (nextPosition >= 0 && position >= 0 && queue.get(position).getId() == nextSongId) {
+            // Same song, moved
+            nextPosition = position;
+        } else {
+            prepareNext();
+        }
+    }
+
+    private void pickNextShufflePosition() {
+        nextShufflePosition = shuffle && !queue.isEmpty() ? random.nextInt(queue.size()) : -1;
+    }
+
+    /**
+     * Starts decoding the art of the songs likely to play next, so the
+     * players and the notification have it as soon as the song changes.
+     */
+    private void warmUpcomingArt() {
+        for (AlbumArtLoader.Request request : upcomingArt) {
+            request.cancel();
+        }
+        upcomingArt.clear();
+
+        List<Integer> positions = new ArrayList<>();
+        if (shuffle) {
+            if (nextShufflePosition >= 0) {
+                positions.add(nextShufflePosition);
+            }
+        } else {
+            for (int i = 1; i <= UPCOMING_ART && i < queue.size(); i++) {
+                positions.add((currentPosition + i) % queue.size());
+            }
+        }
+
+        for (int i = 0; i < positions.size(); i++) {
+            Song song = queue.get(positions.get(i));
+            upcomingArt.add(AlbumArtLoader.prefetch(this, song.getAlbumId(), song.getPath(),
+                    AlbumArtLoader.ArtSize.NOTIFICATION));
+            if (i == 0) {
+                // The full player only for the very next song; it's the largest size
+                upcomingArt.add(AlbumArtLoader.prefetch(this, song.getAlbumId(), song.getPath(),
+                        AlbumArtLoader.ArtSize.PLAYER));
+            }
+        }
     }
 
     public void setRepeat(boolean repeat) {
+        if (this.repeat == repeat) return;
         this.repeat = repeat;
+        prepareNext();
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
         listeners.clear();
+        handler.removeCallbacks(crossfadeCheck);
+        if (crossfader != null) crossfader.release();
+        for (AlbumArtLoader.Request request : upcomingArt) {
+            request.cancel();
+        }
+        if (artRequest != null) {
+            artRequest.cancel();
+        }
 
         if (wakeLock.isHeld()) {
             wakeLock.release();
@@ -506,6 +965,14 @@ public class MusicService extends Service {
         }
 
         try {
+            if (fadingPlayer != null) {
+                fadingPlayer.release();
+                fadingPlayer = null;
+            }
+            if (nextPlayer != null) {
+                nextPlayer.release();
+                nextPlayer = null;
+            }
             if (mediaPlayer != null) {
                 if (mediaPlayer.isPlaying()) {
                     mediaPlayer.stop();
@@ -0,0 +1,159 @@
+package com.uxp.musicq;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The songs MusicService plays from, in play order. A list handed to it is
+ * shared, not copied: library lists are large and never edited, and a list
+ * still growing while the first scan streams grows here too. The queue takes
+ * its own copy the first time it's edited.
+ *
+ * Songs are found by id through an open-addressed id -> position table,
+ * built on the first lookup. Appended songs are added to it as they're
+ * looked past; any other edit rebuilds it on the next lookup.
+ */
+public class PlaybackQueue {
+    private List<Song> songs = Collections.emptyList();
+    // songs is this queue's own copy and can be edited in place
+    private boolean owned;
+
+    // Slots of the id table; a position of -1 marks a free slot
+    private long[] slotIds;
+    private int[] slotPositions;
+    private int slotsUsed;
+    // Positions below this are in the table
+    private int indexed;
+
+    public void setSongs(List<Song> songs) {
+        this.songs = songs;
+        owned = false;
+        clearIndex();
+    }
+
+    public int size() {
+        return songs.size();
+    }
+
+    public boolean isEmpty() {
+        return songs.isEmpty();
+    }
+
+    public Song get(int position) {
+        return songs.get(position);
+    }
+
+    /**
+     * The position of the first song with the given id, or -1.
+     */
+    public int indexOf(long id) {
+        if (indexed > songs.size()) {
+            clearIndex();
+        }
+        while (indexed < songs.size()) {
+            put(songs.get(indexed).getId(), indexed);
+            indexed++;
+        }
+        if (slotIds == null) return -1;
+
+        int mask = slotIds.length - 1;
+        for (int slot = hash(id) & mask; slotPositions[slot] >= 0; slot = (slot + 1) & mask) {
+            if (slotIds[slot] == id) return slotPositions[slot];
+        }
+        return -1;
+    }
+
+    /**
+     * Adds the song at the end.
+     */
+    public void add(Song song) {
+        // The table still holds for every position before it
+        edit().add(song);
+    }
+
+    public void add(int position, Song song) {
+        edit().add(position, song);
+        clearIndex();
+    }
+
+    public void move(int from, int to) {
+        if (from == to) return;
+        List<Song> list = edit();
+        list.add(to, list.remove(from));
+        clearIndex();
+    }
+
+    public Song remove(int position) {
+        Song song = edit().remove(position);
+        clearIndex();
+        return song;
+    }
+
+    private List<Song> edit() {
+        if (!owned) {
+            songs = new ArrayList<>(songs);
+            owned = true;
+        }
+        return songs;
+    }
+
+    private void clearIndex() {
+        slotIds = null;
+        slotPositions = null;
+        slotsUsed = 0;
+        indexed = 0;
+    }
+
+    /**
+     * Records the position unless the id already has an earlier one.
+     */
+    private void put(long id, int position) {
+        // Kept at most half full, so probes stay short
+        if (slotIds == null || (slotsUsed + 1) * 2 > slotIds.length) {
+            grow();
+        }
+        int mask = slotIds.length - 1;
+        int slot = hash(id) & mask;
+        while (slotPositions[slot] >= 0) {
+            if (slotIds[slot] == id) return;
+            slot = (slot + 1) & mask;
+        }
+        slotIds[slot] = id;
+        slotPositions[slot] = position;
+        slotsUsed++;
+    }
+
+    private void grow() {
+        long[] oldIds = slotIds;
+        int[] oldPositions = slotPositions;
+        int capacity = Integer.highestOneBit(Math.max(16, songs.size() * 2 - 1)) * 2;
+        if (oldIds != null) {
+            capacity = Math.max(capacity, oldIds.length * 2);
+        }
+
+        slotIds = new long[capacity];
+        slotPositions = new int[capacity];
+        Arrays.fill(slotPositions, -1);
+        slotsUsed = 0;
+        if (oldIds == null) return;
+
+        int mask = capacity - 1;
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldPositions[i] < 0) continue;
+            int slot = hash(oldIds[i]) & mask;
+            while (slotPositions[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            slotIds[slot] = oldIds[i];
+            slotPositions[slot] = oldPositions[i];
+            slotsUsed++;
+        }
+    }
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -7,12 +7,17 @@ import android.content.ServiceConnection;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
+import android.view.inputmethod.InputMethodManager;
+import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.SeekBar;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
@@ -20,23 +25,33 @@ import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import java.util.ArrayList;
 import java.util.List;
 
-public class PlayerActivity extends AppCompatActivity implements MusicService.PlayerUpdateListener {
+public class PlayerActivity extends AppCompatActivity implements MusicService.PlayerUpdateListener,
+        LibraryRepository.LibraryListener {
     private MusicService musicService;
     private boolean serviceBound = false;
     private RecyclerView recyclerView;
+    private ArtPrefetcher artPrefetcher;
     private SongAdapter songAdapter;
     private AlbumAdapter albumAdapter;
+    private CategoryAdapter artistAdapter;
+    private CategoryAdapter genreAdapter;
     private PlaylistAdapter playlistAdapter;
     private TextView txtSongTitle, txtArtist, txtCurrentTime, txtTotalTime;
     private ImageView imgAlbumArt, btnNext, btnPrev, btnShuffle, btnRepeat;
+    private AlbumArtLoader.Request artRequest;
     private FloatingActionButton btnPlay;
     private SeekBar seekBar;
     private View playerCard;
+    private View searchLayout;
+    private EditText edtSearch;
+    private BottomNavigationView bottomNav;
     private List<Song> allSongs;
+    private LibraryRepository libraryRepository;
     private Handler handler = new Handler();
     private boolean isShuffle = false;
     private boolean isRepeat = false;
     private String currentView = "songs";
+    private SongStore.SortOrder sortOrder = SongStore.SortOrder.TITLE;
     private boolean userSeeking = false;
 
     private ServiceConnection serviceConnection = new ServiceConnection() {
@@ -62,10 +77,14 @@ public class PlayerActivity extends AppCompatActivity implements MusicService.Pl
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_player);
 
+        libraryRepository = LibraryRepository.getInstance(this);
+        sortOrder = loadSortOrder();
+
         initViews();
         setupRecyclerView();
         setupBottomNav();
         bindMusicService();
+        libraryRepository.addListener(this);
 
         playerCard.setVisibility(View.GONE);
     }
@@ -79,6 +98,8 @@ public class PlayerActivity extends AppCompatActivity implements MusicService.Pl
         txtTotalTime = findViewById(R.id.txtTotalTime);
         imgAlbumArt = findViewById(R.id.imgAlbumArt);
         seekBar = findViewById(R.id.seekBar);
+        searchLayout = findViewById(R.id.searchLayout);
+        edtSearch = findViewById(R.id.edtSearch);
 
         btnPlay = findViewById(R.id.btnPlay);
         btnNext = findViewById(R.id.btnNext);
@@ -135,6 +156,23 @@ public class PlayerActivity extends AppCompatActivity implements MusicService.Pl
             Toast.makeText(this, isRepeat ? "Repeat ON" : "Repeat OFF", Toast.LENGTH_SHORT).show();
         });
 
+        edtSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                if ("songs".equals(currentView)) {
+                    showSongs();
+                }
+            }
+        });
+
         seekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
@@ -160,13 +198,14 @@ public class PlayerActivity extends AppCompatActivity implements MusicService.Pl
 
     private void setupRecyclerView() {
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        artPrefetcher = ArtPrefetcher.attach(recyclerView);
         allSongs = new ArrayList<>();
         songAdapter = new SongAdapter(allSongs, this::onSongClick);
         recyclerView.setAdapter(songAdapter);
     }
 
     private void setupBottomNav() {
-        BottomNavigationView bottomNav = findViewById(R.id.bottomNav);
+        bottomNav = findViewById(R.id.bottomNav);
         bottomNav.setOnItemSelectedListener(item -> {
             int id = item.getItemId();
             if (id == R.id.nav_songs) {
@@ -175,10 +214,22 @@ public class PlayerActivity extends AppCompatActivity implements MusicService.Pl
                 return true;
             } else if (id == R.id.nav_albums) {
                 currentView = "albums";
+                closeSearch();
                 loadAlbums();
                 return true;
+            } else if (id == R.id.nav_artists) {
+                currentView = "artists";
+                closeSearch();
+                loadArtists();
+                return true;
+            } else if (id == R.id.nav_genres) {
+                currentView = "genres";
+                closeSearch();
+                loadGenres();
+                return true;
             } else if (id == R.id.nav_playlists) {
                 currentView = "playlists";
+                closeSearch();
                 loadPlaylists();
                 return true;
             }
@@ -191,9 +242,17 @@ public class PlayerActivity extends AppCompatActivity implements MusicService.Pl
     private void showMenu() {
         android.widget.PopupMenu popup = new android.widget.PopupMenu(this, findViewById(R.id.toolbar));
         popup.getMenuInflater().inflate(R.menu.main_menu, popup.getMenu());
+        popup.getMenu().findItem(sortMenuId(sortOrder)).setChecked(true);
         popup.setOnMenuItemClickListener(item -> {
             int id = item.getItemId();
-            if (id == R.id.menu_create_playlist) {
+            SongStore.SortOrder selectedOrder = sortOrderForMenuId(id);
+            if (selectedOrder != null) {
+                setSortOrder(selectedOrder);
+                return true;
+            } else if (id == R.id.menu_search) {
+                openSearch();
+                return true;
+            } else if (id == R.id.menu_create_playlist) {
                 startActivity(new Intent(this, CreatePlaylistActivity.class));
                 return true;
             } else if (id == R.id.menu_settings) {
@@ -208,6 +267,77 @@ public class PlayerActivity extends AppCompatActivity implements MusicService.Pl
         popup.show();
     }
 
+    private SongStore.SortOrder loadSortOrder() {
+        String name = getSharedPreferences("harmoniq_settings", MODE_PRIVATE)
+                .getString("sort_order", SongStore.SortOrder.TITLE.name());
+        try {
+            return SongStore.SortOrder.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return SongStore.SortOrder.TITLE;
+        }
+    }
+
+    private void setSortOrder(SongStore.SortOrder order) {
+        sortOrder = order;
+        getSharedPreferences("harmoniq_settings", MODE_PRIVATE).edit()
+                .putString("sort_order", order.name()).apply();
+
+        if (!"songs".equals(currentView)) {
+            bottomNav.setSelectedItemId(R.id.nav_songs);
+        } else {
+            showSongs();
+        }
+    }
+
+    private static SongStore.SortOrder sortOrderForMenuId(int id) {
+        if (id == R.id.sort_title) return SongStore.SortOrder.TITLE;
+        if (id == R.id.sort_artist) return SongStore.SortOrder.ARTIST;
+        if (id == R.id.sort_album) return SongStore.SortOrder.ALBUM;
+        if (id == R.id.sort_duration) return SongStore.SortOrder.DURATION;
+        if (id == R.id.sort_date_added) return SongStore.SortOrder.DATE_ADDED;
+        return null;
+    }
+
+    private static int sortMenuId(SongStore.SortOrder order) {
+        switch (order) {
+            case ARTIST:
+                return R.id.sort_artist;
+            case ALBUM:
+                return R.id.sort_album;
+            case DURATION:
+                return R.id.sort_duration;
+            case DATE_ADDED:
+                return R.id.sort_date_added;
+            default:
+                return R.id.sort_title;
+        }
+    }
+
+    private void openSearch() {
+        if (!"songs".equals(currentView)) {
+            bottomNav.setSelectedItemId(R.id.nav_songs);
+        }
+        searchLayout.setVisibility(View.VISIBLE);
+        edtSearch.requestFocus();
+        InputMethodManager imm = (InputMethodManager) getSystemService(Context.INPUT_METHOD_SERVICE);
+        imm.showSoftInput(edtSearch, InputMethodManager.SHOW_IMPLICIT);
+    }
+
+    private void closeSearch() {
+        if (searchLayout.getVisibility() != View.VISIBLE) return;
+
+        InputMethodManager imm = (InputMethodManager) getSystemService(Context.INPUT_METHOD_SERVICE);
+        imm.hideSoftInputFromWindow(edtSearch.getWindowToken(), 0);
+        searchLayout.setVisibility(View.GONE);
+        // Clearing the text puts the full song list back
+        edtSearch.setText("");
+    }
+
+    private String getSearchQuery() {
+        if (searchLayout.getVisibility() != View.VISIBLE) return "";
+        return edtSearch.getText() != null ? edtSearch.getText().toString().trim() : "";
+    }
+
     private void bindMusicService() {
         Intent intent = new Intent(this, MusicService.class);
         startService(intent);
@@ -215,29 +345,23 @@ public class PlayerActivity extends AppCompatActivity implements MusicService.Pl
     }
 
     private void loadMusic() {
-        try {
-            MusicLoader loader = new MusicLoader(this);
-            allSongs = loader.loadSongs();
-
-            if (allSongs.isEmpty()) {
-                Toast.makeText(this, "No music found", Toast.LENGTH_LONG).show();
-            }
+        showSongs();
+        libraryRepository.refresh();
+    }
 
-            songAdapter.updateSongs(allSongs);
+    private void showSongs() {
+        String query = getSearchQuery();
+        allSongs = query.isEmpty() ? libraryRepository.getSongs(sortOrder) : libraryRepository.search(query);
+        songAdapter.updateSongs(allSongs);
+        // Only a tab switch swaps the adapter; search keystrokes keep the view holders
+        if (recyclerView.getAdapter() != songAdapter) {
             recyclerView.setAdapter(songAdapter);
-
-            if (musicService != null) {
-                musicService.setSongList(allSongs);
-            }
-        } catch (Exception e) {
-            Toast.makeText(this, "Error loading music", Toast.LENGTH_SHORT).show();
         }
     }
 
     private void loadAlbums() {
         try {
-            MusicLoader loader = new MusicLoader(this);
-            List<Album> albums = loader.loadAlbums();
+            List<Album> albums = libraryRepository.getLibraryIndex().getAlbums();
 
             if (albumAdapter == null) {
                 albumAdapter = new AlbumAdapter(albums, this::onAlbumClick);
@@ -251,6 +375,66 @@ public class PlayerActivity extends AppCompatActivity implements MusicService.Pl
         }
     }
 
+    private void loadArtists() {
+        List<Category> artists = libraryRepository.getLibraryIndex().getArtists();
+        if (artistAdapter == null) {
+            artistAdapter = new CategoryAdapter(artists, (category, position) -> onCategoryClick("artist", category));
+        } else {
+            artistAdapter.updateCategories(artists);
+        }
+        recyclerView.setAdapter(artistAdapter);
+    }
+
+    private void loadGenres() {
+        List<Category> genres = libraryRepository.getLibraryIndex().getGenres();
+        if (genreAdapter == null) {
+            genreAdapter = new CategoryAdapter(genres, (category, position) -> onCategoryClick("genre", category));
+        } else {
+            genreAdapter.updateCategories(genres);
+        }
+        recyclerView.setAdapter(genreAdapter);
+    }
+
+    @Override
+    public void onLibraryChanged(LibraryRepository repository) {
+        if (repository.getSongs().isEmpty()) {
+            Toast.makeText(this, "No music found", Toast.LENGTH_LONG).show();
+        }
+
+        if ("songs".equals(currentView)) {
+            showSongs();
+        } else if ("albums".equals(currentView)) {
+            loadAlbums();
+        } else if ("artists".equals(currentView)) {
+            loadArtists();
+        } else if ("genres".equals(currentView)) {
+            loadGenres();
+        }
+    }
+
+    @Override
+    public void onSongsAppended(LibraryRepository repository, int start, int count) {
+        if (!"songs".equals(currentView)) return;
+
+        if (allSongs == repository.getSongs()) {
+            songAdapter.notifySongsInserted(start, count);
+        } else {
+            showSongs();
+        }
+    }
+
+    @Override
+    public void onSongsUpdated(LibraryRepository repository, List<Song> previous,
+                               DiffUtil.DiffResult diff) {
+        if (!"songs".equals(currentView) || allSongs != previous || !getSearchQuery().isEmpty()) {
+            onLibraryChanged(repository);
+            return;
+        }
+
+        allSongs = repository.getSongs();
+        songAdapter.applyUpdate(allSongs, diff);
+    }
+
     private void loadPlaylists() {
         try {
             PlaylistManager manager = new PlaylistManager(this);
@@ -280,7 +464,8 @@ public class PlayerActivity extends AppCompatActivity implements MusicService.Pl
 
     private void onSongClick(Song song, int position) {
         if (musicService != null) {
-            musicService.playSong(position);
+            // The list shown becomes the queue only once one of its songs is played
+            musicService.playSongs(allSongs, position);
             playerCard.setVisibility(View.VISIBLE);
         }
     }
@@ -293,6 +478,15 @@ public class PlayerActivity extends AppCompatActivity implements MusicService.Pl
         startActivity(intent);
     }
 
+    private void onCategoryClick(String type, Category category) {
+        Intent intent = new Intent(this, AlbumDetailActivity.class);
+        intent.putExtra("category_type", type);
+        intent.putExtra("album_name", category.getName());
+        intent.putExtra("artist_name", category.getAlbumCount() +
+                (category.getAlbumCount() == 1 ? " album" : " albums"));
+        startActivity(intent);
+    }
+
     @Override
     public void onSongChanged(Song song) {
         runOnUiThread(() -> {
@@ -301,7 +495,8 @@ public class PlayerActivity extends AppCompatActivity implements MusicService.Pl
                 txtArtist.setText(song.getArtist());
                 txtTotalTime.setText(song.getFormattedDuration());
                 seekBar.setMax((int) song.getDuration());
-                AlbumArtLoader.loadAlbumArt(this, song.getPath(), imgAlbumArt);
+                artRequest = AlbumArtLoader.loadAlbumArt(this, song.getAlbumId(), song.getPath(),
+                        AlbumArtLoader.ArtSize.NOTIFICATION, imgAlbumArt);
                 playerCard.setVisibility(View.VISIBLE);
             }
         });
@@ -342,10 +537,26 @@ public class PlayerActivity extends AppCompatActivity implements MusicService.Pl
         return String.format("%d:%02d", minutes, seconds);
     }
 
+    @Override
+    public void onBackPressed() {
+        if (searchLayout.getVisibility() == View.VISIBLE) {
+            closeSearch();
+            return;
+        }
+        super.onBackPressed();
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
         handler.removeCallbacksAndMessages(null);
+        libraryRepository.removeListener(this);
+        if (artRequest != null) {
+            artRequest.cancel();
+        }
+        // Recycles the rows, which cancels their pending art
+        recyclerView.setAdapter(null);
+        artPrefetcher.cancel();
         if (serviceBound && musicService != null) {
             musicService.unregisterListener(this);
             unbindService(serviceConnection);
@@ -359,12 +570,5 @@ public class PlayerActivity extends AppCompatActivity implements MusicService.Pl
         if (musicService != null) {
             updateUIFromService();
         }
-        MemoryManager.checkMemory(this);
-    }
-
-    @Override
-    public void onLowMemory() {
-        super.onLowMemory();
-        MemoryManager.onLowMemory();
     }
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+package com.uxp.musicq;
+
+/**
+ * Stable sort of row numbers by a comparator over rows, without boxing them
+ * into an Integer[] first.
+ */
+final class RowSort {
+    private static final int INSERTION_SORT_THRESHOLD = 8;
+
+    interface RowComparator {
+        int compare(int rowA, int rowB);
+    }
+
+    private RowSort() {
+    }
+
+    /**
+     * Rows 0 to size - 1 in comparator order.
+     */
+    static int[] sorted(int size, RowComparator comparator) {
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) rows[i] = i;
+        sort(rows, comparator);
+        return rows;
+    }
+
+    /**
+     * Sorts the rows in place; equal rows keep their order.
+     */
+    static void sort(int[] rows, RowComparator comparator) {
+        if (rows.length < 2) return;
+        mergeSort(rows.clone(), rows, 0, rows.length, comparator);
+    }
+
+    // src and dest hold the same rows on entry; the range ends up sorted in dest
+    private static void mergeSort(int[] src, int[] dest, int low, int high, RowComparator comparator) {
+        if (high - low < INSERTION_SORT_THRESHOLD) {
+            for (int i = low + 1; i < high; i++) {
+                int row = dest[i];
+                int j = i;
+                for (; j > low && comparator.compare(dest[j - 1], row) > 0; j--) {
+                    dest[j] = dest[j - 1];
+                }
+                dest[j] = row;
+            }
+            return;
+        }
+
+        int mid = (low + high) >>> 1;
+        mergeSort(dest, src, low, mid, comparator);
+        mergeSort(dest, src, mid, high, comparator);
+
+        // Already in order, as for rows that were mostly sorted to begin with
+        if (comparator.compare(src[mid - 1], src[mid]) <= 0) {
+            System.arraycopy(src, low, dest, low, high - low);
+            return;
+        }
+        for (int i = low, p = low, q = mid; i < high; i++) {
+            if (q >= high || (p < mid && comparator.compare(src[p], src[q]) <= 0)) {
+                dest[i] = src[p++];
+            } else {
+                dest[i] = src[q++];
+            }
+        }
+    }
+}
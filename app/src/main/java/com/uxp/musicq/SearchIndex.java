@@ -0,0 +1,387 @@
+package com.uxp.musicq;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Token index over song title, artist and album. Text is case- and
+ * diacritic-folded, so "beyonce" finds "Beyoncé". Each query word matches any
+ * indexed word it is a prefix of, and all query words must match. When that
+ * finds nothing, words are matched again allowing a typo or two, using a
+ * trigram index over the vocabulary to find candidate words.
+ *
+ * All methods are synchronized; updates are small and queries touch only the
+ * posting lists they need.
+ */
+public class SearchIndex {
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final int MAX_FUZZY_RESULTS = 100;
+
+    // word -> songs containing it, sorted so a query word's prefix range is a sub-map
+    private final TreeMap<String, Postings> words = new TreeMap<>();
+    // trigram -> words containing it, to find spelling candidates
+    private final Map<String, Set<String>> trigrams = new HashMap<>();
+    // song id -> its distinct words, for removal and multi-word checks
+    private final Map<Long, String[]> documents = new HashMap<>();
+
+    public static class Result {
+        public final long[] ids;
+        /** True if the ids are typo-tolerant matches ordered best first. */
+        public final boolean fuzzy;
+
+        Result(long[] ids, boolean fuzzy) {
+            this.ids = ids;
+            this.fuzzy = fuzzy;
+        }
+    }
+
+    /**
+     * Sorted set of song ids.
+     */
+    private static class Postings {
+        long[] ids = new long[2];
+        int size;
+
+        void add(long id) {
+            // Ids mostly arrive in ascending order, so this is usually an append
+            int i = size > 0 && ids[size - 1] < id ? -size - 1 : Arrays.binarySearch(ids, 0, size, id);
+            if (i >= 0) return;
+            i = -i - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, i, ids, i + 1, size - i);
+            ids[i] = id;
+            size++;
+        }
+
+        void remove(long id) {
+            int i = Arrays.binarySearch(ids, 0, size, id);
+            if (i < 0) return;
+            System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+            size--;
+        }
+    }
+
+    public static SearchIndex build(SongStore store) {
+        SearchIndex index = new SearchIndex();
+        // Adding in id order keeps every posting list append-only
+        long[] ids = new long[store.size()];
+        for (int row = 0; row < ids.length; row++) ids[row] = store.getId(row);
+        Arrays.sort(ids);
+        for (long id : ids) {
+            int row = store.indexOf(id);
+            index.add(id, store.getTitle(row), store.getArtist(row), store.getAlbum(row));
+        }
+        return index;
+    }
+
+    public synchronized void add(long id, String title, String artist, String album) {
+        remove(id);
+
+        List<String> tokens = new ArrayList<>();
+        tokenize(title, tokens);
+        tokenize(artist, tokens);
+        tokenize(album, tokens);
+
+        String[] unique = tokens.stream().distinct().toArray(String[]::new);
+        for (int i = 0; i < unique.length; i++) {
+            String word = unique[i];
+            Postings postings = words.get(word);
+            if (postings == null) {
+                postings = new Postings();
+                words.put(word, postings);
+                for (String trigram : trigramsOf(word)) {
+                    Set<String> containing = trigrams.get(trigram);
+                    if (containing == null) {
+                        containing = new HashSet<>();
+                        trigrams.put(trigram, containing);
+                    }
+                    containing.add(word);
+                }
+            } else {
+                // Share the key instance so documents don't hold duplicate strings
+                unique[i] = words.ceilingKey(word);
+            }
+            postings.add(id);
+        }
+        documents.put(id, unique);
+    }
+
+    public synchronized void remove(long id) {
+        String[] removed = documents.remove(id);
+        if (removed == null) return;
+
+        for (String word : removed) {
+            Postings postings = words.get(word);
+            postings.remove(id);
+            if (postings.size > 0) continue;
+
+            words.remove(word);
+            for (String trigram : trigramsOf(word)) {
+                Set<String> containing = trigrams.get(trigram);
+                containing.remove(word);
+                if (containing.isEmpty()) {
+                    trigrams.remove(trigram);
+                }
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return documents.size();
+    }
+
+    /**
+     * Returns the ids of matching songs: prefix matches in ascending id
+     * order, or typo-tolerant matches best first if there were none.
+     */
+    public synchronized Result search(String query) {
+        List<String> terms = new ArrayList<>();
+        tokenize(query, terms);
+        if (terms.isEmpty()) {
+            return new Result(new long[0], false);
+        }
+
+        long[] matches = prefixSearch(terms);
+        if (matches.length > 0) {
+            return new Result(matches, false);
+        }
+        return new Result(fuzzySearch(terms), true);
+    }
+
+    private long[] prefixSearch(List<String> terms) {
+        // The longest word is usually the most selective; check the rest per document
+        String driver = terms.get(0);
+        for (String term : terms) {
+            if (term.length() > driver.length()) driver = term;
+        }
+
+        long[] candidates = collect(prefixRange(driver).values());
+        if (terms.size() == 1) {
+            return candidates;
+        }
+
+        int count = 0;
+        for (long id : candidates) {
+            if (matchesAll(documents.get(id), terms)) {
+                candidates[count++] = id;
+            }
+        }
+        return Arrays.copyOf(candidates, count);
+    }
+
+    private NavigableMap<String, Postings> prefixRange(String prefix) {
+        return words.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    /**
+     * Union of the given posting lists, sorted and without repeats.
+     */
+    private static long[] collect(Iterable<Postings> lists) {
+        int total = 0;
+        Postings only = null;
+        for (Postings postings : lists) {
+            total += postings.size;
+            only = postings;
+        }
+        if (only != null && only.size == total) {
+            return Arrays.copyOf(only.ids, total);
+        }
+
+        long[] ids = new long[total];
+        int offset = 0;
+        for (Postings postings : lists) {
+            System.arraycopy(postings.ids, 0, ids, offset, postings.size);
+            offset += postings.size;
+        }
+        Arrays.sort(ids);
+
+        int count = 0;
+        for (int i = 0; i < total; i++) {
+            if (i == 0 || ids[i - 1] != ids[i]) {
+                ids[count++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    private static boolean matchesAll(String[] docWords, List<String> terms) {
+        for (String term : terms) {
+            boolean found = false;
+            for (String word : docWords) {
+                if (word.startsWith(term)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Every term must match a word by prefix or within a few edits. Songs
+     * are ranked by the total number of edits their best matches needed.
+     */
+    private long[] fuzzySearch(List<String> terms) {
+        Map<Long, Integer> cost = null;
+
+        for (String term : terms) {
+            Map<Long, Integer> termCost = new HashMap<>();
+            for (Postings postings : prefixRange(term).values()) {
+                addCost(termCost, postings, 0);
+            }
+            for (Map.Entry<String, Integer> entry : spellingCandidates(term).entrySet()) {
+                addCost(termCost, words.get(entry.getKey()), entry.getValue());
+            }
+
+            if (cost == null) {
+                cost = termCost;
+            } else {
+                Map<Long, Integer> both = new HashMap<>();
+                for (Map.Entry<Long, Integer> entry : cost.entrySet()) {
+                    Integer extra = termCost.get(entry.getKey());
+                    if (extra != null) {
+                        both.put(entry.getKey(), entry.getValue() + extra);
+                    }
+                }
+                cost = both;
+            }
+            if (cost.isEmpty()) break;
+        }
+
+        List<Map.Entry<Long, Integer>> hits = new ArrayList<>(cost.entrySet());
+        hits.sort((a, b) -> a.getValue().equals(b.getValue())
+                ? Long.compare(a.getKey(), b.getKey()) : Integer.compare(a.getValue(), b.getValue()));
+
+        int count = Math.min(hits.size(), MAX_FUZZY_RESULTS);
+        long[] result = new long[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = hits.get(i).getKey();
+        }
+        return result;
+    }
+
+    private static void addCost(Map<Long, Integer> cost, Postings postings, int edits) {
+        for (int i = 0; i < postings.size; i++) {
+            Integer current = cost.get(postings.ids[i]);
+            if (current == null || edits < current) {
+                cost.put(postings.ids[i], edits);
+            }
+        }
+    }
+
+    /**
+     * Indexed words that share a trigram with the term and are within its
+     * edit allowance, with their distance.
+     */
+    private Map<String, Integer> spellingCandidates(String term) {
+        Map<String, Integer> matches = new HashMap<>();
+        int maxEdits = term.length() < 4 ? 0 : term.length() < 8 ? 1 : 2;
+        if (maxEdits == 0) return matches;
+
+        List<String> termTrigrams = trigramsOf(term);
+        Map<String, Integer> shared = new HashMap<>();
+        for (String trigram : termTrigrams) {
+            Set<String> containing = trigrams.get(trigram);
+            if (containing == null) continue;
+            for (String word : containing) {
+                if (Math.abs(word.length() - term.length()) <= maxEdits) {
+                    shared.merge(word, 1, Integer::sum);
+                }
+            }
+        }
+
+        // One edit (a swap included) breaks at most four trigrams
+        int minShared = Math.max(1, termTrigrams.size() - 4 * maxEdits);
+        for (Map.Entry<String, Integer> entry : shared.entrySet()) {
+            if (entry.getValue() < minShared) continue;
+            int distance = editDistance(term, entry.getKey(), maxEdits);
+            if (distance <= maxEdits) {
+                matches.put(entry.getKey(), distance);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Optimal string alignment distance (insertions, deletions, substitutions
+     * and adjacent swaps), giving up early once it exceeds {@code limit}.
+     */
+    static int editDistance(String a, String b, int limit) {
+        int[] previous2 = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) previous[j] = j;
+
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1),
+                        previous[j - 1] + substitution);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2)
+                        && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    value = Math.min(value, previous2[j - 2] + 1);
+                }
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            if (rowMin > limit) return limit + 1;
+
+            int[] recycled = previous2;
+            previous2 = previous;
+            previous = current;
+            current = recycled;
+        }
+        return previous[b.length()];
+    }
+
+    /**
+     * Lower-cases, strips accents and splits on anything that isn't a letter
+     * or digit.
+     */
+    static void tokenize(String text, List<String> out) {
+        if (text == null || text.isEmpty()) return;
+
+        String folded = COMBINING_MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD))
+                .replaceAll("")
+                .toLowerCase(Locale.ROOT);
+
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean wordChar = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                out.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * Trigrams of the word padded with a boundary marker, so short words and
+     * word starts still produce grams.
+     */
+    private static List<String> trigramsOf(String word) {
+        String padded = "\u0000" + word + "\u0000";
+        List<String> grams = new ArrayList<>(padded.length() - 2);
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+}
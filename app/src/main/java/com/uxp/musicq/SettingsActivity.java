@@ -20,7 +20,7 @@ public class SettingsActivity extends AppCompatActivity {
     private boolean serviceBound = false;
     private SeekBar seekBarVolume, seekBarSpeed, seekBarPitch, seekBarCrossfade;
     private TextView txtVolume, txtSpeed, txtPitch, txtCrossfade;
-    private Switch switchEqualizer, switchBassBoost, switchVirtualizer, switchBatterySaver;
+    private Switch switchEqualizer, switchBassBoost, switchVirtualizer, switchBatterySaver, switchGapless;
 
     private ServiceConnection serviceConnection = new ServiceConnection() {
         @Override
@@ -73,13 +73,14 @@ public class SettingsActivity extends AppCompatActivity {
         switchBassBoost = findViewById(R.id.switchBassBoost);
         switchVirtualizer = findViewById(R.id.switchVirtualizer);
         switchBatterySaver = findViewById(R.id.switchBatterySaver);
+        switchGapless = findViewById(R.id.switchGapless);
     }
 
     private void loadSettings() {
         int volume = prefs.getInt("volume", 100);
         float speed = prefs.getFloat("speed", 1.0f);
         float pitch = prefs.getFloat("pitch", 1.0f);
-        int crossfade = prefs.getInt("crossfade", 5);
+        int crossfade = prefs.getInt("crossfade", 0);
 
         seekBarVolume.setProgress(volume);
         seekBarSpeed.setProgress((int)((speed - 0.5f) * 100));
@@ -92,6 +93,7 @@ public class SettingsActivity extends AppCompatActivity {
         switchBassBoost.setChecked(prefs.getBoolean("bass_boost", false));
         switchVirtualizer.setChecked(prefs.getBoolean("virtualizer", false));
         switchBatterySaver.setChecked(prefs.getBoolean("battery_saver", false));
+        switchGapless.setChecked(prefs.getBoolean("gapless", true));
     }
 
     private void setupListeners() {
@@ -159,6 +161,16 @@ public class SettingsActivity extends AppCompatActivity {
             @Override
             public void onStopTrackingTouch(SeekBar seekBar) {
                 saveInt("crossfade", seekBar.getProgress());
+                if (musicService != null) {
+                    musicService.setCrossfade(seekBar.getProgress());
+                }
+            }
+        });
+
+        switchGapless.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            saveBoolean("gapless", isChecked);
+            if (musicService != null) {
+                musicService.setGapless(isChecked);
             }
         });
 
@@ -1,5 +1,7 @@
 package com.uxp.musicq;
 
+import java.util.Objects;
+
 public class Song {
     private long id;
     private String title;
@@ -8,10 +10,28 @@ public class Song {
     private long albumId;
     private String path;
     private long duration;
+    private int track;
+    private long dateAdded;
+    private String genre;
     private String lyrics;
 
     public Song(long id, String title, String artist, String album,
                 long albumId, String path, long duration) {
+        this(id, title, artist, album, albumId, path, duration, 0);
+    }
+
+    public Song(long id, String title, String artist, String album,
+                long albumId, String path, long duration, int track) {
+        this(id, title, artist, album, albumId, path, duration, track, 0);
+    }
+
+    public Song(long id, String title, String artist, String album,
+                long albumId, String path, long duration, int track, long dateAdded) {
+        this(id, title, artist, album, albumId, path, duration, track, dateAdded, null);
+    }
+
+    public Song(long id, String title, String artist, String album, long albumId,
+                String path, long duration, int track, long dateAdded, String genre) {
         this.id = id;
         this.title = title != null ? title : "Unknown Title";
         this.artist = artist != null ? artist : "Unknown Artist";
@@ -19,7 +39,9 @@ public class Song {
         this.albumId = albumId;
         this.path = path;
         this.duration = duration;
-        this.lyrics = "";
+        this.track = track;
+        this.dateAdded = dateAdded;
+        this.genre = genre != null ? genre : "Unknown Genre";
     }
 
     public long getId() {
@@ -50,12 +72,27 @@ public class Song {
         return duration;
     }
 
+    public int getTrack() {
+        return track;
+    }
+
+    /**
+     * Seconds since the epoch when MediaStore first saw the file.
+     */
+    public long getDateAdded() {
+        return dateAdded;
+    }
+
+    public String getGenre() {
+        return genre;
+    }
+
     public String getLyrics() {
-        return lyrics;
+        return lyrics != null ? lyrics : "";
     }
 
     public void setLyrics(String lyrics) {
-        this.lyrics = lyrics != null ? lyrics : "";
+        this.lyrics = lyrics;
     }
 
     public String getFormattedDuration() {
@@ -65,6 +102,16 @@ public class Song {
         return String.format("%d:%02d", minutes, seconds);
     }
 
+    /**
+     * True when every scanned field matches; {@link #equals} only compares ids.
+     */
+    public boolean hasSameContent(Song other) {
+        return id == other.id && albumId == other.albumId && duration == other.duration
+                && track == other.track && dateAdded == other.dateAdded && title.equals(other.title)
+                && artist.equals(other.artist) && album.equals(other.album) && genre.equals(other.genre)
+                && Objects.equals(path, other.path);
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
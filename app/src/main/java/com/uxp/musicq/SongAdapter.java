@@ -6,11 +6,13 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 import java.util.ArrayList;
 import java.util.List;
 
-public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder> {
+public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder>
+        implements ArtPrefetcher.ArtSource {
     private List<Song> songs;
     private OnSongClickListener listener;
 
@@ -37,19 +39,48 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder
         holder.bind(song, position);
     }
 
+    @Override
+    public void onViewRecycled(@NonNull SongViewHolder holder) {
+        holder.cancelArt();
+    }
+
     @Override
     public int getItemCount() {
         return songs.size();
     }
 
+    @Override
+    public long getArtAlbumId(int position) {
+        return songs.get(position).getAlbumId();
+    }
+
+    @Override
+    public String getArtPath(int position) {
+        return songs.get(position).getPath();
+    }
+
     public void updateSongs(List<Song> newSongs) {
         this.songs = newSongs != null ? newSongs : new ArrayList<>();
         notifyDataSetChanged();
     }
 
+    /**
+     * For a list that was passed to {@link #updateSongs} and has since grown
+     * in place.
+     */
+    public void notifySongsInserted(int start, int count) {
+        notifyItemRangeInserted(start, count);
+    }
+
+    public void applyUpdate(List<Song> newSongs, DiffUtil.DiffResult diff) {
+        this.songs = newSongs != null ? newSongs : new ArrayList<>();
+        diff.dispatchUpdatesTo(this);
+    }
+
     class SongViewHolder extends RecyclerView.ViewHolder {
         private TextView txtTitle, txtArtist, txtDuration;
         private ImageView imgAlbumArt;
+        private AlbumArtLoader.Request artRequest;
 
         public SongViewHolder(@NonNull View itemView) {
             super(itemView);
@@ -63,7 +94,8 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder
             txtTitle.setText(song.getTitle());
             txtArtist.setText(song.getArtist());
             txtDuration.setText(song.getFormattedDuration());
-            AlbumArtLoader.loadAlbumArt(itemView.getContext(), song.getPath(), imgAlbumArt);
+            artRequest = AlbumArtLoader.loadAlbumArt(itemView.getContext(), song.getAlbumId(), song.getPath(),
+                    AlbumArtLoader.ArtSize.LIST, imgAlbumArt);
 
             itemView.setOnClickListener(v -> {
                 if (listener != null) {
@@ -71,5 +103,12 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder
                 }
             });
         }
+
+        void cancelArt() {
+            if (artRequest != null) {
+                artRequest.cancel();
+                artRequest = null;
+            }
+        }
     }
 }
\ No newline at end of file
@@ -11,7 +11,8 @@ import androidx.recyclerview.widget.RecyclerView;
 import java.util.ArrayList;
 import java.util.List;
 
-public class SongSelectionAdapter extends RecyclerView.Adapter<SongSelectionAdapter.ViewHolder> {
+public class SongSelectionAdapter extends RecyclerView.Adapter<SongSelectionAdapter.ViewHolder>
+        implements ArtPrefetcher.ArtSource {
     private List<Song> songs;
     private OnSongSelectListener listener;
 
@@ -37,15 +38,36 @@ public class SongSelectionAdapter extends RecyclerView.Adapter<SongSelectionAdap
         holder.bind(songs.get(position));
     }
 
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        holder.cancelArt();
+    }
+
     @Override
     public int getItemCount() {
         return songs.size();
     }
 
+    @Override
+    public long getArtAlbumId(int position) {
+        return songs.get(position).getAlbumId();
+    }
+
+    @Override
+    public String getArtPath(int position) {
+        return songs.get(position).getPath();
+    }
+
+    public void updateSongs(List<Song> newSongs) {
+        this.songs = newSongs != null ? newSongs : new ArrayList<>();
+        notifyDataSetChanged();
+    }
+
     class ViewHolder extends RecyclerView.ViewHolder {
         TextView txtTitle, txtArtist;
         ImageView imgAlbumArt;
         CheckBox checkbox;
+        AlbumArtLoader.Request artRequest;
 
         ViewHolder(@NonNull View itemView) {
             super(itemView);
@@ -58,7 +80,8 @@ public class SongSelectionAdapter extends RecyclerView.Adapter<SongSelectionAdap
         void bind(Song song) {
             txtTitle.setText(song.getTitle());
             txtArtist.setText(song.getArtist());
-            AlbumArtLoader.loadAlbumArt(itemView.getContext(), song.getPath(), imgAlbumArt);
+            artRequest = AlbumArtLoader.loadAlbumArt(itemView.getContext(), song.getAlbumId(), song.getPath(),
+                    AlbumArtLoader.ArtSize.LIST, imgAlbumArt);
 
             checkbox.setOnCheckedChangeListener(null);
             checkbox.setChecked(false);
@@ -71,5 +94,12 @@ public class SongSelectionAdapter extends RecyclerView.Adapter<SongSelectionAdap
 
             itemView.setOnClickListener(v -> checkbox.toggle());
         }
+
+        void cancelArt() {
+            if (artRequest != null) {
+                artRequest.cancel();
+                artRequest = null;
+            }
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,507 @@
+package com.uxp.musicq;
+
+import java.lang.ref.WeakReference;
+import java.text.Collator;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Column-oriented, immutable copy of the library. Numbers live in primitive
+ * arrays and artist, album and directory strings are stored once in shared
+ * pools, so a large library costs a handful of arrays instead of one object
+ * graph per track. {@link Song} objects are only created when asked for.
+ *
+ * Rows are in title order. Other orders are permutations of the rows, sorted
+ * once from precomputed collation keys and kept, so switching the sort order
+ * neither queries MediaStore nor creates songs.
+ */
+public class SongStore {
+    public enum SortOrder {
+        TITLE, ARTIST, ALBUM, DURATION, DATE_ADDED
+    }
+
+    // Columns are package-private so LibrarySnapshot can write and map them directly
+    final int size;
+    final long[] ids;
+    final long[] albumIds;
+    final long[] durations;
+    final long[] datesAdded;
+    final int[] tracks;
+    final String[] titles;
+    final String[] fileNames;
+    final int[] artistRefs;
+    final int[] albumRefs;
+    final int[] genreRefs;
+    final int[] dirRefs;
+    final String[] artistPool;
+    final String[] albumPool;
+    final String[] genrePool;
+    final String[] dirPool;
+    final SortKeys sortKeys;
+
+    // ids sorted ascending, with the row each one lives in
+    private final long[] sortedIds;
+    private final int[] sortedIdRows;
+    // Row permutations by SortOrder, made on first use
+    private final int[][] orders = new int[SortOrder.values().length][];
+    // Orders let go of by trimOrders, still reachable while a list holds them
+    @SuppressWarnings("unchecked")
+    private final WeakReference<int[]>[] trimmedOrders = new WeakReference[SortOrder.values().length];
+    // When each order was last asked for, in calls to getOrder
+    private final long[] orderUses = new long[SortOrder.values().length];
+    private long useCount;
+
+    /**
+     * Rows must be in the title order of {@code sortKeys}; see
+     * {@link #inCurrentLocale()} for keys made for another locale.
+     */
+    SongStore(long[] ids, long[] albumIds, long[] durations, long[] datesAdded, int[] tracks,
+              String[] titles, String[] fileNames, int[] artistRefs, int[] albumRefs, int[] genreRefs,
+              int[] dirRefs, String[] artistPool, String[] albumPool, String[] genrePool,
+              String[] dirPool, SortKeys sortKeys) {
+        this.size = ids.length;
+        this.ids = ids;
+        this.albumIds = albumIds;
+        this.durations = durations;
+        this.datesAdded = datesAdded;
+        this.tracks = tracks;
+        this.titles = titles;
+        this.fileNames = fileNames;
+        this.artistRefs = artistRefs;
+        this.albumRefs = albumRefs;
+        this.genreRefs = genreRefs;
+        this.dirRefs = dirRefs;
+        this.artistPool = artistPool;
+        this.albumPool = albumPool;
+        this.genrePool = genrePool;
+        this.dirPool = dirPool;
+        this.sortKeys = sortKeys;
+
+        sortedIds = new long[size];
+        sortedIdRows = RowSort.sorted(size, (a, b) -> Long.compare(ids[a], ids[b]));
+        for (int i = 0; i < size; i++) {
+            sortedIds[i] = ids[sortedIdRows[i]];
+        }
+    }
+
+    /**
+     * This store if its sort keys were made for the current locale, otherwise
+     * a copy with the keys made afresh and the rows in the locale's title
+     * order, which TITLE lists and the tie-breaks of other orders rely on.
+     */
+    SongStore inCurrentLocale() {
+        if (sortKeys.locale.equals(SortKeys.currentLocale())) return this;
+
+        Builder builder = new Builder(size);
+        for (int row = 0; row < size; row++) {
+            builder.add(this, row);
+        }
+        return builder.build();
+    }
+
+    public static SongStore empty() {
+        return new Builder(0).build();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getId(int row) {
+        return ids[row];
+    }
+
+    public long getAlbumId(int row) {
+        return albumIds[row];
+    }
+
+    public long getDuration(int row) {
+        return durations[row];
+    }
+
+    public long getDateAdded(int row) {
+        return datesAdded[row];
+    }
+
+    public int getTrack(int row) {
+        return tracks[row];
+    }
+
+    public String getTitle(int row) {
+        return titles[row];
+    }
+
+    public String getArtist(int row) {
+        return artistPool[artistRefs[row]];
+    }
+
+    public String getAlbum(int row) {
+        return albumPool[albumRefs[row]];
+    }
+
+    public String getGenre(int row) {
+        return genrePool[genreRefs[row]];
+    }
+
+    public String getPath(int row) {
+        return dirPool[dirRefs[row]] + fileNames[row];
+    }
+
+    /**
+     * Returns the row holding the given song id, or -1.
+     */
+    public int indexOf(long id) {
+        int i = Arrays.binarySearch(sortedIds, id);
+        return i >= 0 ? sortedIdRows[i] : -1;
+    }
+
+    public boolean contains(long id) {
+        return Arrays.binarySearch(sortedIds, id) >= 0;
+    }
+
+    public Song get(int row) {
+        return new Song(ids[row], titles[row], getArtist(row), getAlbum(row),
+                albumIds[row], getPath(row), durations[row], tracks[row], datesAdded[row],
+                getGenre(row));
+    }
+
+    /**
+     * Compares the artist names of two rows in collation order.
+     */
+    public int compareArtists(int rowA, int rowB) {
+        return SortKeys.compare(sortKeys.artists[artistRefs[rowA]], sortKeys.artists[artistRefs[rowB]]);
+    }
+
+    /**
+     * Compares the genres of two rows in collation order.
+     */
+    public int compareGenres(int rowA, int rowB) {
+        return SortKeys.compare(sortKeys.genres[genreRefs[rowA]], sortKeys.genres[genreRefs[rowB]]);
+    }
+
+    /**
+     * Compares the album names of two rows in collation order.
+     */
+    public int compareAlbums(int rowA, int rowB) {
+        return SortKeys.compare(sortKeys.albums[albumRefs[rowA]], sortKeys.albums[albumRefs[rowB]]);
+    }
+
+    /**
+     * Rows in the given order, or null for TITLE, which is the order of the
+     * rows themselves. The array is shared; don't modify it.
+     */
+    public synchronized int[] getOrder(SortOrder order) {
+        if (order == SortOrder.TITLE) return null;
+        int[] rows = orders[order.ordinal()];
+        if (rows == null) {
+            WeakReference<int[]> trimmed = trimmedOrders[order.ordinal()];
+            rows = trimmed != null ? trimmed.get() : null;
+            if (rows == null) {
+                rows = sortRows(order);
+            }
+            orders[order.ordinal()] = rows;
+            trimmedOrders[order.ordinal()] = null;
+        }
+        orderUses[order.ordinal()] = ++useCount;
+        return rows;
+    }
+
+    /**
+     * True if {@link #getOrder} would return without sorting: the order is
+     * held, or was trimmed and is still reachable.
+     */
+    public synchronized boolean hasOrder(SortOrder order) {
+        if (order == SortOrder.TITLE || orders[order.ordinal()] != null) return true;
+        WeakReference<int[]> trimmed = trimmedOrders[order.ordinal()];
+        return trimmed != null && trimmed.get() != null;
+    }
+
+    /**
+     * Bytes of the sort orders the store holds on to, not counting trimmed ones.
+     */
+    public synchronized long getOrderBytes() {
+        long bytes = 0;
+        for (int[] rows : orders) {
+            if (rows != null) bytes += rows.length * 4L;
+        }
+        return bytes;
+    }
+
+    public long getMaxOrderBytes() {
+        // TITLE is never made
+        return (orders.length - 1) * (long) size * 4;
+    }
+
+    /**
+     * Lets go of sort orders, least recently used first, until they take at
+     * most {@code maxBytes}. An order a list still holds isn't freed by this,
+     * so it's only weakly kept and handed out again while it lasts; once
+     * nothing holds it, {@link LibraryRepository} sorts it again off the
+     * main thread.
+     */
+    public synchronized void trimOrders(long maxBytes) {
+        long bytes = getOrderBytes();
+        while (bytes > maxBytes) {
+            int oldest = -1;
+            for (int i = 0; i < orders.length; i++) {
+                if (orders[i] != null && (oldest < 0 || orderUses[i] < orderUses[oldest])) {
+                    oldest = i;
+                }
+            }
+            bytes -= orders[oldest].length * 4L;
+            trimmedOrders[oldest] = new WeakReference<>(orders[oldest]);
+            orders[oldest] = null;
+        }
+    }
+
+    private int[] sortRows(SortOrder order) {
+        byte[][] titleKeys = sortKeys.titles;
+        byte[][] artistKeys = sortKeys.artists;
+        byte[][] albumKeys = sortKeys.albums;
+
+        // Every order ends on the title key, then the row, so ties are stable
+        return RowSort.sorted(size, (a, b) -> {
+            int result = 0;
+            switch (order) {
+                case ARTIST:
+                    result = SortKeys.compare(artistKeys[artistRefs[a]], artistKeys[artistRefs[b]]);
+                    if (result == 0) result = SortKeys.compare(albumKeys[albumRefs[a]], albumKeys[albumRefs[b]]);
+                    if (result == 0) result = Integer.compare(tracks[a], tracks[b]);
+                    break;
+                case ALBUM:
+                    result = SortKeys.compare(albumKeys[albumRefs[a]], albumKeys[albumRefs[b]]);
+                    if (result == 0) result = Integer.compare(tracks[a], tracks[b]);
+                    break;
+                case DURATION:
+                    result = Long.compare(durations[a], durations[b]);
+                    break;
+                case DATE_ADDED:
+                    // Newest first
+                    result = Long.compare(datesAdded[b], datesAdded[a]);
+                    break;
+                default:
+                    break;
+            }
+            if (result == 0) result = SortKeys.compare(titleKeys[a], titleKeys[b]);
+            return result != 0 ? result : Integer.compare(a, b);
+        });
+    }
+
+    /**
+     * A read-only list that creates each {@link Song} when it is read.
+     */
+    public List<Song> asList() {
+        return new RowList(null);
+    }
+
+    /**
+     * Like {@link #asList()}, but only over the given rows, in the given order.
+     */
+    public List<Song> asList(int[] rows) {
+        return new RowList(rows);
+    }
+
+    public List<Song> asList(SortOrder order) {
+        return order == SortOrder.TITLE ? asList() : asList(getOrder(order));
+    }
+
+    private class RowList extends AbstractList<Song> implements RandomAccess {
+        private final int[] rows;
+
+        RowList(int[] rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public Song get(int index) {
+            return SongStore.this.get(rows != null ? rows[index] : index);
+        }
+
+        @Override
+        public int size() {
+            return rows != null ? rows.length : size;
+        }
+    }
+
+    private static class StringPool {
+        private final Map<String, Integer> refs = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int ref(String value) {
+            Integer ref = refs.get(value);
+            if (ref == null) {
+                ref = values.size();
+                refs.put(value, ref);
+                values.add(value);
+            }
+            return ref;
+        }
+
+        String[] toArray() {
+            return values.toArray(new String[0]);
+        }
+    }
+
+    public static class Builder {
+        private int count = 0;
+        private long[] ids;
+        private long[] albumIds;
+        private long[] durations;
+        private long[] datesAdded;
+        private int[] tracks;
+        private int[] artistRefs;
+        private int[] albumRefs;
+        private int[] genreRefs;
+        private int[] dirRefs;
+        private final List<String> titles;
+        private final List<String> fileNames;
+        private final List<byte[]> titleKeys;
+        private final String locale = SortKeys.currentLocale();
+        private final StringPool artists = new StringPool();
+        private final StringPool albums = new StringPool();
+        private final StringPool genres = new StringPool();
+        private final StringPool dirs = new StringPool();
+
+        public Builder(int expectedSize) {
+            int capacity = Math.max(16, expectedSize);
+            ids = new long[capacity];
+            albumIds = new long[capacity];
+            durations = new long[capacity];
+            datesAdded = new long[capacity];
+            tracks = new int[capacity];
+            artistRefs = new int[capacity];
+            albumRefs = new int[capacity];
+            genreRefs = new int[capacity];
+            dirRefs = new int[capacity];
+            titles = new ArrayList<>(capacity);
+            fileNames = new ArrayList<>(capacity);
+            titleKeys = new ArrayList<>(capacity);
+        }
+
+        public Builder add(Song song) {
+            return add(song.getId(), song.getTitle(), song.getArtist(), song.getAlbum(),
+                    song.getAlbumId(), song.getPath(), song.getDuration(), song.getTrack(),
+                    song.getDateAdded(), song.getGenre());
+        }
+
+        /**
+         * Copies a row, reusing its title sort key if the locale is unchanged.
+         */
+        public Builder add(SongStore store, int row) {
+            add(store.ids[row], store.titles[row], store.getArtist(row), store.getAlbum(row),
+                    store.albumIds[row], store.getPath(row), store.durations[row], store.tracks[row],
+                    store.datesAdded[row], store.getGenre(row));
+            if (store.sortKeys.locale.equals(locale)) {
+                titleKeys.set(count - 1, store.sortKeys.titles[row]);
+            }
+            return this;
+        }
+
+        public Builder add(long id, String title, String artist, String album,
+                           long albumId, String path, long duration, int track, long dateAdded,
+                           String genre) {
+            if (count == ids.length) {
+                grow();
+            }
+
+            String safePath = path != null ? path : "";
+            int split = safePath.lastIndexOf('/') + 1;
+
+            ids[count] = id;
+            albumIds[count] = albumId;
+            durations[count] = duration;
+            datesAdded[count] = dateAdded;
+            tracks[count] = track;
+            artistRefs[count] = artists.ref(artist);
+            albumRefs[count] = albums.ref(album);
+            genreRefs[count] = genres.ref(genre);
+            dirRefs[count] = dirs.ref(safePath.substring(0, split));
+            titles.add(title);
+            fileNames.add(safePath.substring(split));
+            titleKeys.add(null);
+            count++;
+            return this;
+        }
+
+        private void grow() {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            albumIds = Arrays.copyOf(albumIds, capacity);
+            durations = Arrays.copyOf(durations, capacity);
+            datesAdded = Arrays.copyOf(datesAdded, capacity);
+            tracks = Arrays.copyOf(tracks, capacity);
+            artistRefs = Arrays.copyOf(artistRefs, capacity);
+            albumRefs = Arrays.copyOf(albumRefs, capacity);
+            genreRefs = Arrays.copyOf(genreRefs, capacity);
+            dirRefs = Arrays.copyOf(dirRefs, capacity);
+        }
+
+        public int size() {
+            return count;
+        }
+
+        /**
+         * Builds the store with rows in the title collation order of the
+         * current locale. Sort keys are only computed for rows that didn't
+         * bring one along.
+         */
+        public SongStore build() {
+            Collator collator = SortKeys.newCollator();
+            for (int i = 0; i < count; i++) {
+                if (titleKeys.get(i) == null) {
+                    titleKeys.set(i, SortKeys.key(collator, titles.get(i)));
+                }
+            }
+
+            int[] order = RowSort.sorted(count, (a, b) -> {
+                int result = SortKeys.compare(titleKeys.get(a), titleKeys.get(b));
+                return result != 0 ? result : Long.compare(ids[a], ids[b]);
+            });
+
+            long[] sortedIds = new long[count];
+            long[] sortedAlbumIds = new long[count];
+            long[] sortedDurations = new long[count];
+            long[] sortedDatesAdded = new long[count];
+            int[] sortedTracks = new int[count];
+            String[] sortedTitles = new String[count];
+            String[] sortedFileNames = new String[count];
+            byte[][] sortedTitleKeys = new byte[count][];
+            int[] sortedArtistRefs = new int[count];
+            int[] sortedAlbumRefs = new int[count];
+            int[] sortedGenreRefs = new int[count];
+            int[] sortedDirRefs = new int[count];
+
+            for (int row = 0; row < count; row++) {
+                int source = order[row];
+                sortedIds[row] = ids[source];
+                sortedAlbumIds[row] = albumIds[source];
+                sortedDurations[row] = durations[source];
+                sortedDatesAdded[row] = datesAdded[source];
+                sortedTracks[row] = tracks[source];
+                sortedTitles[row] = titles.get(source);
+                sortedFileNames[row] = fileNames.get(source);
+                sortedTitleKeys[row] = titleKeys.get(source);
+                sortedArtistRefs[row] = artistRefs[source];
+                sortedAlbumRefs[row] = albumRefs[source];
+                sortedGenreRefs[row] = genreRefs[source];
+                sortedDirRefs[row] = dirRefs[source];
+            }
+
+            String[] artistPool = artists.toArray();
+            String[] albumPool = albums.toArray();
+            String[] genrePool = genres.toArray();
+            SortKeys sortKeys = new SortKeys(locale, sortedTitleKeys, SortKeys.keys(collator, artistPool),
+                    SortKeys.keys(collator, albumPool), SortKeys.keys(collator, genrePool));
+
+            return new SongStore(sortedIds, sortedAlbumIds, sortedDurations, sortedDatesAdded,
+                    sortedTracks, sortedTitles, sortedFileNames, sortedArtistRefs, sortedAlbumRefs,
+                    sortedGenreRefs, sortedDirRefs, artistPool, albumPool, genrePool, dirs.toArray(),
+                    sortKeys);
+        }
+    }
+}
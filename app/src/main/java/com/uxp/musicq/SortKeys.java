@@ -0,0 +1,65 @@
+package com.uxp.musicq;
+
+import java.text.Collator;
+import java.util.Locale;
+
+/**
+ * Collation keys for the text columns of a {@link SongStore}, made once per
+ * string with the locale's collator so sorting afterwards is plain byte
+ * comparison. Titles get one key per row; artists, albums and genres one per
+ * pool entry.
+ */
+class SortKeys {
+    final String locale;
+    final byte[][] titles;
+    final byte[][] artists;
+    final byte[][] albums;
+    final byte[][] genres;
+
+    SortKeys(String locale, byte[][] titles, byte[][] artists, byte[][] albums, byte[][] genres) {
+        this.locale = locale;
+        this.titles = titles;
+        this.artists = artists;
+        this.albums = albums;
+        this.genres = genres;
+    }
+
+    static String currentLocale() {
+        return Locale.getDefault().toLanguageTag();
+    }
+
+    /**
+     * Ignores case but not accents. Collators aren't thread-safe, so each
+     * build makes its own.
+     */
+    static Collator newCollator() {
+        Collator collator = Collator.getInstance();
+        collator.setStrength(Collator.SECONDARY);
+        return collator;
+    }
+
+    static byte[] key(Collator collator, String value) {
+        return collator.getCollationKey(value != null ? value : "").toByteArray();
+    }
+
+    static byte[][] keys(Collator collator, String[] values) {
+        byte[][] keys = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            keys[i] = key(collator, values[i]);
+        }
+        return keys;
+    }
+
+    /**
+     * Unsigned lexicographic order, which is the order of the strings the
+     * keys were made from.
+     */
+    static int compare(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int diff = (a[i] & 0xff) - (b[i] & 0xff);
+            if (diff != 0) return diff;
+        }
+        return a.length - b.length;
+    }
+}
@@ -0,0 +1,234 @@
+package com.uxp.musicq;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persistent store of {@link TagInfo} keyed by file path. An entry is only
+ * valid while the file's size and modification time still match.
+ *
+ * Kept in its own database so it can be thrown away and rebuilt without
+ * touching playlists.
+ */
+public class TagCache extends SQLiteOpenHelper {
+    private static final String DATABASE_NAME = "tag_cache.db";
+    private static final int DATABASE_VERSION = 2;
+    private static final String TAG = "TagCache";
+
+    private static final String TABLE_TAGS = "tags";
+
+    private static final String COL_PATH = "path";
+    private static final String COL_SIZE = "size";
+    private static final String COL_MODIFIED = "modified";
+    private static final String COL_TRACK = "track";
+    private static final String COL_DISC = "disc";
+    private static final String COL_YEAR = "year";
+    private static final String COL_GENRE = "genre";
+    private static final String COL_ALBUM_ARTIST = "album_artist";
+    private static final String COL_TRACK_GAIN = "track_gain";
+    private static final String COL_ALBUM_GAIN = "album_gain";
+    private static final String COL_BITRATE = "bitrate";
+    private static final String COL_SAMPLE_RATE = "sample_rate";
+
+    private static TagCache instance;
+
+    private TagCache(Context context) {
+        super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+        // SQLite's page cache can't be measured from here, only handed back
+        MemoryManager.getInstance(context).register("tag cache", new MemoryManager.Trimmable() {
+            @Override
+            public long getSize() {
+                return -1;
+            }
+
+            @Override
+            public long getMaxSize() {
+                return -1;
+            }
+
+            @Override
+            public void trimToSize(long maxBytes) {
+                SQLiteDatabase.releaseMemory();
+            }
+        });
+    }
+
+    /**
+     * One shared helper, so the scanner threads and screens reuse the same
+     * open connection.
+     */
+    public static synchronized TagCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new TagCache(context);
+        }
+        return instance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        try {
+            db.execSQL("CREATE TABLE " + TABLE_TAGS + " (" +
+                    COL_PATH + " TEXT PRIMARY KEY, " +
+                    COL_SIZE + " INTEGER, " +
+                    COL_MODIFIED + " INTEGER, " +
+                    COL_TRACK + " INTEGER, " +
+                    COL_DISC + " INTEGER, " +
+                    COL_YEAR + " TEXT, " +
+                    COL_GENRE + " TEXT, " +
+                    COL_ALBUM_ARTIST + " TEXT, " +
+                    COL_TRACK_GAIN + " REAL, " +
+                    COL_ALBUM_GAIN + " REAL, " +
+                    COL_BITRATE + " INTEGER, " +
+                    COL_SAMPLE_RATE + " INTEGER)");
+        } catch (Exception e) {
+            Log.e(TAG, "Error creating tag table", e);
+        }
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        try {
+            // Only a cache: rebuilding it is always safe
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_TAGS);
+            onCreate(db);
+        } catch (Exception e) {
+            Log.e(TAG, "Error upgrading tag database", e);
+        }
+    }
+
+    /**
+     * Returns the cached tags for the path, or null if there are none or
+     * they were read from a different version of the file.
+     */
+    public TagInfo get(String path, long size, long modified) {
+        Cursor cursor = null;
+        try {
+            cursor = getReadableDatabase().query(TABLE_TAGS, null, COL_PATH + "=?",
+                    new String[]{path}, null, null, null);
+            if (cursor == null || !cursor.moveToFirst()) {
+                return null;
+            }
+            TagInfo info = readTagInfo(cursor);
+            return info.matches(size, modified) ? info : null;
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading cached tags", e);
+            return null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Size and modification time of every cached file, as {size, modified}
+     * by path, so a scan can tell which files changed without reading rows.
+     */
+    public Map<String, long[]> getStamps() {
+        Map<String, long[]> stamps = new HashMap<>();
+        Cursor cursor = null;
+        try {
+            cursor = getReadableDatabase().query(TABLE_TAGS,
+                    new String[]{COL_PATH, COL_SIZE, COL_MODIFIED}, null, null, null, null, null);
+            while (cursor != null && cursor.moveToNext()) {
+                stamps.put(cursor.getString(0), new long[]{cursor.getLong(1), cursor.getLong(2)});
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading tag stamps", e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return stamps;
+    }
+
+    public void putAll(Collection<TagInfo> tags) {
+        if (tags.isEmpty()) return;
+
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (TagInfo info : tags) {
+                db.insertWithOnConflict(TABLE_TAGS, null, toValues(info), SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e(TAG, "Error writing cached tags", e);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void removeAll(Set<String> paths) {
+        if (paths.isEmpty()) return;
+
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (String path : paths) {
+                db.delete(TABLE_TAGS, COL_PATH + "=?", new String[]{path});
+            }
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e(TAG, "Error removing cached tags", e);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static ContentValues toValues(TagInfo info) {
+        ContentValues values = new ContentValues();
+        values.put(COL_PATH, info.getPath());
+        values.put(COL_SIZE, info.getSize());
+        values.put(COL_MODIFIED, info.getModified());
+        values.put(COL_TRACK, info.getTrack());
+        values.put(COL_DISC, info.getDisc());
+        values.put(COL_YEAR, info.getYear());
+        values.put(COL_GENRE, info.getGenre());
+        values.put(COL_ALBUM_ARTIST, info.getAlbumArtist());
+        putGain(values, COL_TRACK_GAIN, info.getTrackGain());
+        putGain(values, COL_ALBUM_GAIN, info.getAlbumGain());
+        values.put(COL_BITRATE, info.getBitrate());
+        values.put(COL_SAMPLE_RATE, info.getSampleRate());
+        return values;
+    }
+
+    private static void putGain(ContentValues values, String column, float gain) {
+        if (Float.isNaN(gain)) {
+            values.putNull(column);
+        } else {
+            values.put(column, gain);
+        }
+    }
+
+    private static TagInfo readTagInfo(Cursor cursor) {
+        TagInfo info = new TagInfo(
+                cursor.getString(cursor.getColumnIndexOrThrow(COL_PATH)),
+                cursor.getLong(cursor.getColumnIndexOrThrow(COL_SIZE)),
+                cursor.getLong(cursor.getColumnIndexOrThrow(COL_MODIFIED)));
+        info.setTrack(cursor.getInt(cursor.getColumnIndexOrThrow(COL_TRACK)));
+        info.setDisc(cursor.getInt(cursor.getColumnIndexOrThrow(COL_DISC)));
+        info.setYear(cursor.getString(cursor.getColumnIndexOrThrow(COL_YEAR)));
+        info.setGenre(cursor.getString(cursor.getColumnIndexOrThrow(COL_GENRE)));
+        info.setAlbumArtist(cursor.getString(cursor.getColumnIndexOrThrow(COL_ALBUM_ARTIST)));
+        info.setTrackGain(readGain(cursor, COL_TRACK_GAIN));
+        info.setAlbumGain(readGain(cursor, COL_ALBUM_GAIN));
+        info.setBitrate(cursor.getInt(cursor.getColumnIndexOrThrow(COL_BITRATE)));
+        info.setSampleRate(cursor.getInt(cursor.getColumnIndexOrThrow(COL_SAMPLE_RATE)));
+        return info;
+    }
+
+    private static float readGain(Cursor cursor, String column) {
+        int index = cursor.getColumnIndexOrThrow(column);
+        return cursor.isNull(index) ? Float.NaN : cursor.getFloat(index);
+    }
+}
@@ -0,0 +1,127 @@
+package com.uxp.musicq;
+
+/**
+ * Tag fields and stream details MediaStore doesn't provide, read from the
+ * file itself. Size and modification time identify the version of the file
+ * they were read from.
+ */
+public class TagInfo {
+    private String path;
+    private long size;
+    private long modified;
+    private int track;
+    private int disc;
+    private String year;
+    private String genre;
+    private String albumArtist;
+    private float trackGain = Float.NaN;
+    private float albumGain = Float.NaN;
+    private int bitrate;
+    private int sampleRate;
+
+    public TagInfo(String path, long size, long modified) {
+        this.path = path;
+        this.size = size;
+        this.modified = modified;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getModified() {
+        return modified;
+    }
+
+    public int getTrack() {
+        return track;
+    }
+
+    public void setTrack(int track) {
+        this.track = track;
+    }
+
+    public int getDisc() {
+        return disc;
+    }
+
+    public void setDisc(int disc) {
+        this.disc = disc;
+    }
+
+    public String getYear() {
+        return year;
+    }
+
+    public void setYear(String year) {
+        this.year = year;
+    }
+
+    public String getGenre() {
+        return genre;
+    }
+
+    public void setGenre(String genre) {
+        this.genre = genre;
+    }
+
+    public String getAlbumArtist() {
+        return albumArtist;
+    }
+
+    public void setAlbumArtist(String albumArtist) {
+        this.albumArtist = albumArtist;
+    }
+
+    /**
+     * ReplayGain track gain in dB, or NaN if the file has none.
+     */
+    public float getTrackGain() {
+        return trackGain;
+    }
+
+    public void setTrackGain(float trackGain) {
+        this.trackGain = trackGain;
+    }
+
+    /**
+     * ReplayGain album gain in dB, or NaN if the file has none.
+     */
+    public float getAlbumGain() {
+        return albumGain;
+    }
+
+    public void setAlbumGain(float albumGain) {
+        this.albumGain = albumGain;
+    }
+
+    /**
+     * Bitrate in kbps, or 0 if not known.
+     */
+    public int getBitrate() {
+        return bitrate;
+    }
+
+    public void setBitrate(int bitrate) {
+        this.bitrate = bitrate;
+    }
+
+    /**
+     * Sample rate in Hz, or 0 if not known.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public boolean matches(long size, long modified) {
+        return this.size == size && this.modified == modified;
+    }
+}
@@ -0,0 +1,247 @@
+package com.uxp.musicq;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+import org.jaudiotagger.audio.AudioFile;
+import org.jaudiotagger.audio.AudioFileIO;
+import org.jaudiotagger.audio.AudioHeader;
+import org.jaudiotagger.tag.FieldKey;
+import org.jaudiotagger.tag.Tag;
+import org.jaudiotagger.tag.TagField;
+import org.jaudiotagger.tag.TagTextField;
+import org.jaudiotagger.tag.id3.AbstractID3v2Frame;
+import org.jaudiotagger.tag.id3.framebody.FrameBodyTXXX;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reads the tags MediaStore leaves out (disc, year, genre, album artist,
+ * ReplayGain) from each library file once, in the background, into the
+ * {@link TagCache}. Files whose size and modification time match the cache
+ * are not opened again.
+ */
+public class TagScanner {
+    private static final String TAG = "TagScanner";
+    private static final int MAX_THREADS = 4;
+    private static final int WRITE_BATCH = 100;
+    private static TagScanner instance;
+
+    private final TagCache cache;
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor();
+    private final ExecutorService readers;
+    private final int readerCount;
+    // Paths of the latest request not yet picked up; requests made meanwhile replace it
+    private final AtomicReference<List<String>> pendingPaths = new AtomicReference<>();
+
+    private TagScanner(Context context) {
+        cache = TagCache.getInstance(context);
+        readerCount = Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        readers = Executors.newFixedThreadPool(readerCount, runnable -> new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "TagReader-" + threadNumber.incrementAndGet()));
+    }
+
+    public static synchronized TagScanner getInstance(Context context) {
+        if (instance == null) {
+            instance = new TagScanner(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Brings the cache up to date with the given library files and drops
+     * entries for files no longer in it. Returns immediately.
+     */
+    public void enrich(List<String> paths) {
+        if (pendingPaths.getAndSet(paths) == null) {
+            coordinator.execute(() -> {
+                List<String> latest = pendingPaths.getAndSet(null);
+                if (latest != null) {
+                    scan(latest);
+                }
+            });
+        }
+    }
+
+    /**
+     * Tags for the file: cached ones, or read now and cached if the scan
+     * hasn't reached the file since it last changed. Null if the file is
+     * missing. Reads the disk, so call off the main thread.
+     */
+    public TagInfo getTags(String path) {
+        File file = new File(path);
+        long size = file.length();
+        long modified = file.lastModified();
+        if (modified == 0) return null;
+
+        TagInfo info = cache.get(path, size, modified);
+        if (info == null) {
+            info = new TagInfo(path, size, modified);
+            readTags(info);
+            cache.putAll(Collections.singletonList(info));
+        }
+        return info;
+    }
+
+    private void scan(List<String> paths) {
+        Map<String, long[]> stamps = cache.getStamps();
+        Set<String> gone = new HashSet<>(stamps.keySet());
+        List<TagInfo> changed = new ArrayList<>();
+
+        for (String path : paths) {
+            gone.remove(path);
+            File file = new File(path);
+            long size = file.length();
+            long modified = file.lastModified();
+            if (modified == 0) continue; // missing or unreadable
+
+            long[] stamp = stamps.get(path);
+            if (stamp == null || stamp[0] != size || stamp[1] != modified) {
+                changed.add(new TagInfo(path, size, modified));
+            }
+        }
+        cache.removeAll(gone);
+        if (changed.isEmpty()) return;
+
+        long start = System.currentTimeMillis();
+        CompletionService<TagInfo> completion = new ExecutorCompletionService<>(readers);
+        // Keep a few files queued per reader rather than the whole library at once
+        int maxInFlight = readerCount * 4;
+        int submitted = 0;
+        int finished = 0;
+        List<TagInfo> batch = new ArrayList<>(WRITE_BATCH);
+
+        try {
+            while (finished < changed.size()) {
+                while (submitted < changed.size() && submitted - finished < maxInFlight) {
+                    TagInfo info = changed.get(submitted++);
+                    completion.submit(() -> readTags(info), info);
+                }
+
+                Future<TagInfo> done = completion.take();
+                finished++;
+                try {
+                    batch.add(done.get());
+                } catch (ExecutionException e) {
+                    Log.w(TAG, "Tag reader failed", e.getCause());
+                }
+                if (batch.size() >= WRITE_BATCH) {
+                    cache.putAll(batch);
+                    batch.clear();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        cache.putAll(batch);
+
+        Log.d(TAG, "Read tags of " + finished + " files in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Fills in the tag fields of the given file. A file that can't be parsed
+     * is still cached, empty, so it isn't retried until it changes.
+     */
+    static void readTags(TagInfo info) {
+        try {
+            AudioFile audioFile = AudioFileIO.read(new File(info.getPath()));
+            AudioHeader header = audioFile.getAudioHeader();
+            if (header != null) {
+                info.setBitrate((int) header.getBitRateAsNumber());
+                info.setSampleRate(header.getSampleRateAsNumber());
+            }
+            Tag tag = audioFile.getTag();
+            if (tag == null) return;
+
+            info.setTrack(parseNumber(getFirst(tag, FieldKey.TRACK)));
+            info.setDisc(parseNumber(getFirst(tag, FieldKey.DISC_NO)));
+            info.setYear(emptyToNull(getFirst(tag, FieldKey.YEAR)));
+            info.setGenre(emptyToNull(getFirst(tag, FieldKey.GENRE)));
+            info.setAlbumArtist(emptyToNull(getFirst(tag, FieldKey.ALBUM_ARTIST)));
+            info.setTrackGain(readGain(tag, "replaygain_track_gain"));
+            info.setAlbumGain(readGain(tag, "replaygain_album_gain"));
+        } catch (Exception e) {
+            Log.w(TAG, "Could not read tags of " + info.getPath() + ": " + e.getMessage());
+        }
+    }
+
+    private static String getFirst(Tag tag, FieldKey key) {
+        try {
+            return tag.getFirst(key);
+        } catch (Exception e) {
+            // Not every tag format supports every field
+            return "";
+        }
+    }
+
+    /**
+     * ReplayGain has no common field key: it is a TXXX frame in ID3, a plain
+     * comment in Vorbis/FLAC and a "----:com.apple.iTunes:" atom in MP4.
+     */
+    private static float readGain(Tag tag, String name) {
+        Iterator<TagField> fields = tag.getFields();
+        while (fields.hasNext()) {
+            TagField field = fields.next();
+            String id = field.getId();
+            String value = null;
+
+            if (field instanceof AbstractID3v2Frame
+                    && ((AbstractID3v2Frame) field).getBody() instanceof FrameBodyTXXX) {
+                FrameBodyTXXX body = (FrameBodyTXXX) ((AbstractID3v2Frame) field).getBody();
+                if (name.equalsIgnoreCase(body.getDescription())) {
+                    value = body.getText();
+                }
+            } else if (id != null && field instanceof TagTextField) {
+                String lowerId = id.toLowerCase(Locale.ROOT);
+                if (lowerId.equals(name) || lowerId.endsWith(":" + name)) {
+                    value = ((TagTextField) field).getContent();
+                }
+            }
+
+            if (value != null) {
+                try {
+                    return Float.parseFloat(value.replaceAll("(?i)\\s*db\\s*$", "").trim());
+                } catch (NumberFormatException e) {
+                    return Float.NaN;
+                }
+            }
+        }
+        return Float.NaN;
+    }
+
+    /**
+     * Parses "3" or "3/12" to 3; anything else is 0.
+     */
+    private static int parseNumber(String value) {
+        if (value == null) return 0;
+        int slash = value.indexOf('/');
+        try {
+            return Integer.parseInt((slash >= 0 ? value.substring(0, slash) : value).trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+}
@@ -0,0 +1,311 @@
+package com.uxp.musicq;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class EmbeddedArtReaderTest {
+    private static final byte[] FRONT = {(byte) 0xff, (byte) 0xd8, (byte) 0xff, 0x00, 1, 2, 3};
+    private static final byte[] BACK = {(byte) 0x89, 'P', 'N', 'G', 4, 5};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void id3v23_frontCover() throws IOException {
+        byte[] tag = concat(id3v23Frame("TIT2", text("Title")), id3v23Frame("APIC", apic(3, FRONT)));
+        assertArrayEquals(FRONT, read(concat(id3Header(3, 0, tag.length), tag, mpegFrame())));
+    }
+
+    @Test
+    public void id3v23_prefersFrontCoverOverEarlierPicture() throws IOException {
+        byte[] tag = concat(id3v23Frame("APIC", apic(4, BACK)), id3v23Frame("APIC", apic(3, FRONT)));
+        assertArrayEquals(FRONT, read(concat(id3Header(3, 0, tag.length), tag)));
+    }
+
+    @Test
+    public void id3v23_firstPictureWithoutFrontCover() throws IOException {
+        byte[] tag = concat(id3v23Frame("APIC", apic(4, BACK)), id3v23Frame("APIC", apic(5, FRONT)));
+        assertArrayEquals(BACK, read(concat(id3Header(3, 0, tag.length), tag)));
+    }
+
+    @Test
+    public void id3v23_paddingEndsFrames() throws IOException {
+        byte[] tag = concat(id3v23Frame("TIT2", text("Title")), new byte[64]);
+        assertNull(read(concat(id3Header(3, 0, tag.length), tag)));
+    }
+
+    @Test
+    public void id3v23_unsynchronisedTag() throws IOException {
+        byte[] frames = id3v23Frame("APIC", apic(3, FRONT));
+        byte[] tag = unsynchronise(frames);
+        assertTrue(tag.length > frames.length);
+        assertArrayEquals(FRONT, read(concat(id3Header(3, 0x80, tag.length), tag)));
+    }
+
+    @Test
+    public void id3v23_extendedHeader() throws IOException {
+        byte[] extended = {0, 0, 0, 6, 0, 0, 0, 0, 0, 0};
+        byte[] tag = concat(extended, id3v23Frame("APIC", apic(3, FRONT)));
+        assertArrayEquals(FRONT, read(concat(id3Header(3, 0x40, tag.length), tag)));
+    }
+
+    @Test(expected = IOException.class)
+    public void id3v23_negativeExtendedHeaderSize() throws IOException {
+        byte[] extended = {(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xf0};
+        byte[] tag = concat(extended, id3v23Frame("APIC", apic(3, FRONT)));
+        read(concat(id3Header(3, 0x40, tag.length), tag));
+    }
+
+    @Test(expected = IOException.class)
+    public void id3v23_extendedHeaderPastTag() throws IOException {
+        byte[] extended = {0x10, 0, 0, 0};
+        byte[] tag = concat(extended, id3v23Frame("APIC", apic(3, FRONT)));
+        read(concat(id3Header(3, 0x40, tag.length), tag));
+    }
+
+    @Test
+    public void id3v24_synchsafeFrameSize() throws IOException {
+        // Big enough that the synchsafe and plain encodings of the size differ
+        byte[] image = new byte[300];
+        image[0] = (byte) 0xff;
+        image[299] = 42;
+        byte[] body = apic(3, image);
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        frame.write("APIC".getBytes(StandardCharsets.ISO_8859_1));
+        frame.write(synchsafe(body.length));
+        frame.write(new byte[2]);
+        frame.write(body);
+        byte[] tag = frame.toByteArray();
+        assertArrayEquals(image, read(concat(id3Header(4, 0, tag.length), tag)));
+    }
+
+    @Test
+    public void id3v22_pic() throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(0);
+        body.write("JPG".getBytes(StandardCharsets.ISO_8859_1));
+        body.write(3);
+        body.write(0);
+        body.write(FRONT);
+        byte[] data = body.toByteArray();
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        frame.write("PIC".getBytes(StandardCharsets.ISO_8859_1));
+        frame.write(new byte[]{0, 0, (byte) data.length});
+        frame.write(data);
+        byte[] tag = frame.toByteArray();
+        assertArrayEquals(FRONT, read(concat(id3Header(2, 0, tag.length), tag)));
+    }
+
+    @Test
+    public void id3v23_utf16Description() throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(1);
+        body.write("image/jpeg\0".getBytes(StandardCharsets.ISO_8859_1));
+        body.write(3);
+        body.write("Cover".getBytes(StandardCharsets.UTF_16));
+        body.write(new byte[]{0, 0});
+        body.write(FRONT);
+        byte[] tag = id3v23Frame("APIC", body.toByteArray());
+        assertArrayEquals(FRONT, read(concat(id3Header(3, 0, tag.length), tag)));
+    }
+
+    @Test(expected = EmbeddedArtReader.UnsupportedException.class)
+    public void id3v23_compressedFrameUnsupported() throws IOException {
+        byte[] frame = id3v23Frame("APIC", apic(3, FRONT));
+        frame[9] = (byte) 0x80;
+        read(concat(id3Header(3, 0, frame.length), frame));
+    }
+
+    @Test(expected = IOException.class)
+    public void id3_truncatedTag() throws IOException {
+        byte[] tag = id3v23Frame("APIC", apic(3, FRONT));
+        read(concat(id3Header(3, 0, tag.length + 100), tag));
+    }
+
+    @Test
+    public void id3_oversizedFrameStopsWalk() throws IOException {
+        byte[] frame = id3v23Frame("APIC", apic(3, FRONT));
+        frame[4] = 0x7f;
+        assertNull(read(concat(id3Header(3, 0, frame.length), frame)));
+    }
+
+    @Test
+    public void bareMpeg_noPicture() throws IOException {
+        assertNull(read(mpegFrame()));
+    }
+
+    @Test(expected = EmbeddedArtReader.UnsupportedException.class)
+    public void unknownContainer_unsupported() throws IOException {
+        read("OggS and some more bytes".getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void flac_frontCover() throws IOException {
+        byte[] file = concat("fLaC".getBytes(StandardCharsets.ISO_8859_1),
+                flacBlock(0, false, new byte[34]),
+                flacBlock(6, false, flacPicture(4, BACK)),
+                flacBlock(6, true, flacPicture(3, FRONT)));
+        assertArrayEquals(FRONT, read(file));
+    }
+
+    @Test
+    public void flac_afterId3Tag() throws IOException {
+        byte[] tag = id3v23Frame("TIT2", text("Title"));
+        byte[] file = concat(id3Header(3, 0, tag.length), tag, "fLaC".getBytes(StandardCharsets.ISO_8859_1),
+                flacBlock(6, true, flacPicture(3, FRONT)));
+        assertArrayEquals(FRONT, read(file));
+    }
+
+    @Test
+    public void flac_noPicture() throws IOException {
+        assertNull(read(concat("fLaC".getBytes(StandardCharsets.ISO_8859_1), flacBlock(0, true, new byte[34]))));
+    }
+
+    @Test
+    public void flac_pictureLengthPastBlock() throws IOException {
+        byte[] picture = flacPicture(3, FRONT);
+        picture[picture.length - FRONT.length - 1] = 0x7f;
+        assertNull(read(concat("fLaC".getBytes(StandardCharsets.ISO_8859_1), flacBlock(6, true, picture))));
+    }
+
+    @Test
+    public void mp4_coverUnderUdta() throws IOException {
+        byte[] meta = box("meta", concat(new byte[4], box("hdlr", new byte[25]),
+                box("ilst", box("covr", dataAtom(FRONT)))));
+        byte[] file = concat(ftyp(), box("moov", concat(box("mvhd", new byte[100]), box("udta", meta))),
+                box("mdat", new byte[16]));
+        assertArrayEquals(FRONT, read(file));
+    }
+
+    @Test
+    public void mp4_quickTimeMetaWithoutVersion() throws IOException {
+        byte[] meta = box("meta", concat(box("hdlr", new byte[25]), box("ilst", box("covr", dataAtom(FRONT)))));
+        assertArrayEquals(FRONT, read(concat(ftyp(), box("moov", meta))));
+    }
+
+    @Test
+    public void mp4_noCover() throws IOException {
+        assertNull(read(concat(ftyp(), box("moov", box("mvhd", new byte[100])))));
+    }
+
+    @Test
+    public void mp4_atomSizePastEnd() throws IOException {
+        byte[] moov = box("moov", box("udta", new byte[8]));
+        moov[3] = (byte) 0xff;
+        assertNull(read(concat(ftyp(), moov)));
+    }
+
+    private byte[] read(byte[] contents) throws IOException {
+        File file = folder.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(contents);
+        }
+        return EmbeddedArtReader.read(file);
+    }
+
+    private static byte[] id3Header(int version, int flags, int size) {
+        byte[] header = {'I', 'D', '3', (byte) version, 0, (byte) flags, 0, 0, 0, 0};
+        System.arraycopy(synchsafe(size), 0, header, 6, 4);
+        return header;
+    }
+
+    private static byte[] id3v23Frame(String id, byte[] body) throws IOException {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(frame);
+        out.write(id.getBytes(StandardCharsets.ISO_8859_1));
+        out.writeInt(body.length);
+        out.writeShort(0);
+        out.write(body);
+        return frame.toByteArray();
+    }
+
+    private static byte[] apic(int pictureType, byte[] image) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(0);
+        body.write("image/jpeg\0".getBytes(StandardCharsets.ISO_8859_1));
+        body.write(pictureType);
+        body.write("desc\0".getBytes(StandardCharsets.ISO_8859_1));
+        body.write(image);
+        return body.toByteArray();
+    }
+
+    private static byte[] text(String value) {
+        return concat(new byte[]{0}, value.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static byte[] mpegFrame() {
+        byte[] frame = new byte[32];
+        frame[0] = (byte) 0xff;
+        frame[1] = (byte) 0xfb;
+        return frame;
+    }
+
+    private static byte[] unsynchronise(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte b : data) {
+            out.write(b);
+            if (b == (byte) 0xff) out.write(0);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] synchsafe(int value) {
+        return new byte[]{(byte) ((value >> 21) & 0x7f), (byte) ((value >> 14) & 0x7f),
+                (byte) ((value >> 7) & 0x7f), (byte) (value & 0x7f)};
+    }
+
+    private static byte[] flacBlock(int type, boolean last, byte[] body) {
+        byte[] header = {(byte) (type | (last ? 0x80 : 0)), (byte) (body.length >> 16),
+                (byte) (body.length >> 8), (byte) body.length};
+        return concat(header, body);
+    }
+
+    private static byte[] flacPicture(int pictureType, byte[] image) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        byte[] mime = "image/jpeg".getBytes(StandardCharsets.ISO_8859_1);
+        out.writeInt(pictureType);
+        out.writeInt(mime.length);
+        out.write(mime);
+        out.writeInt(0);
+        out.write(new byte[16]);
+        out.writeInt(image.length);
+        out.write(image);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] ftyp() throws IOException {
+        return box("ftyp", "M4A \0\0\0\0".getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static byte[] dataAtom(byte[] image) throws IOException {
+        return box("data", concat(new byte[]{0, 0, 0, 13, 0, 0, 0, 0}, image));
+    }
+
+    private static byte[] box(String type, byte[] body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(8 + body.length);
+        out.write(type.getBytes(StandardCharsets.ISO_8859_1));
+        out.write(body);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+}
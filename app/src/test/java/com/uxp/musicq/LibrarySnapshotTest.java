@@ -0,0 +1,105 @@
+package com.uxp.musicq;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+
+import static org.junit.Assert.*;
+
+public class LibrarySnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip_keepsEveryRowAndMarker() throws IOException {
+        SongStore store = new SongStore.Builder(4)
+                .add(new Song(3, "Zebra", "Artist B", "Album 2", 20, "/music/b/zebra.mp3", 180000, 2, 1700, "Rock"))
+                .add(new Song(1, "Ärger", "Artist A", "Album 1", 10, "/music/a/ärger.flac", 240000, 1, 1600, null))
+                .add(new Song(7, "apple", "Artist A", "Album 1", 10, "/music/a/apple.m4a", 60000, 3, 1800, "Pop"))
+                .add(new Song(5, "Mango", null, null, 0, null, 0, 0, 0, ""))
+                .build();
+
+        File file = new File(folder.getRoot(), "snapshot.bin");
+        new LibrarySnapshot(store, "v1", 42, 1234567).write(file);
+        LibrarySnapshot read = LibrarySnapshot.read(file);
+
+        assertNotNull(read);
+        assertEquals("v1", read.mediaStoreVersion);
+        assertEquals(42, read.generation);
+        assertEquals(1234567, read.lastSyncSeconds);
+        assertEquals(store.size(), read.store.size());
+        assertEquals(store.sortKeys.locale, read.store.sortKeys.locale);
+        for (int row = 0; row < store.size(); row++) {
+            assertTrue("row " + row, store.get(row).hasSameContent(read.store.get(row)));
+            assertArrayEquals(store.sortKeys.titles[row], read.store.sortKeys.titles[row]);
+        }
+        for (int row = 0; row < store.size(); row++) {
+            assertEquals(row, read.store.indexOf(store.getId(row)));
+        }
+        for (SongStore.SortOrder order : SongStore.SortOrder.values()) {
+            assertArrayEquals(order.name(), store.getOrder(order), read.store.getOrder(order));
+        }
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void roundTrip_emptyStore() throws IOException {
+        File file = new File(folder.getRoot(), "snapshot.bin");
+        new LibrarySnapshot(SongStore.empty(), null, -1, -1).write(file);
+        LibrarySnapshot read = LibrarySnapshot.read(file);
+
+        assertNotNull(read);
+        assertEquals(0, read.store.size());
+        assertEquals("", read.mediaStoreVersion);
+        assertEquals(-1, read.generation);
+    }
+
+    @Test
+    public void write_replacesPreviousSnapshot() throws IOException {
+        File file = new File(folder.getRoot(), "snapshot.bin");
+        new LibrarySnapshot(SongStore.empty(), "old", 1, 1).write(file);
+        new LibrarySnapshot(SongStore.empty(), "new", 2, 2).write(file);
+        assertEquals("new", LibrarySnapshot.read(file).mediaStoreVersion);
+    }
+
+    @Test
+    public void read_missingFile() throws IOException {
+        assertNull(LibrarySnapshot.read(new File(folder.getRoot(), "missing.bin")));
+    }
+
+    @Test
+    public void read_otherVersion() throws IOException {
+        File file = new File(folder.getRoot(), "snapshot.bin");
+        new LibrarySnapshot(SongStore.empty(), "v1", 1, 1).write(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(4);
+            raf.writeInt(999);
+        }
+        assertNull(LibrarySnapshot.read(file));
+    }
+
+    @Test
+    public void read_truncatedFileThrows() throws IOException {
+        SongStore.Builder builder = new SongStore.Builder(100);
+        for (int i = 0; i < 100; i++) {
+            builder.add(new Song(i, "Song " + i, "Artist", "Album", 1, "/music/" + i + ".mp3", 1000));
+        }
+        File file = new File(folder.getRoot(), "snapshot.bin");
+        new LibrarySnapshot(builder.build(), "v1", 1, 1).write(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() / 2);
+        }
+
+        try {
+            LibrarySnapshot.read(file);
+            fail("Read a truncated snapshot");
+        } catch (IOException | BufferUnderflowException expected) {
+            // Either is caught by LibrarySync.loadSnapshot
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.uxp.musicq;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PlaybackQueueTest {
+    @Test
+    public void emptyQueue() {
+        PlaybackQueue queue = new PlaybackQueue();
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+        assertEquals(-1, queue.indexOf(1));
+    }
+
+    @Test
+    public void indexOf_findsEverySong() {
+        PlaybackQueue queue = new PlaybackQueue();
+        queue.setSongs(songs(100));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, queue.indexOf(id(i)));
+        }
+        assertEquals(-1, queue.indexOf(12345));
+    }
+
+    @Test
+    public void indexOf_duplicateGivesFirstPosition() {
+        PlaybackQueue queue = new PlaybackQueue();
+        queue.setSongs(Arrays.asList(song(1), song(2), song(1)));
+        assertEquals(0, queue.indexOf(1));
+    }
+
+    @Test
+    public void sharedList_notCopiedUntilEdited() {
+        List<Song> library = new ArrayList<>(songs(3));
+        PlaybackQueue queue = new PlaybackQueue();
+        queue.setSongs(library);
+
+        queue.add(song(99));
+        queue.remove(0);
+        queue.move(0, 1);
+
+        assertEquals(3, library.size());
+        assertEquals(id(0), library.get(0).getId());
+        assertEquals(3, queue.size());
+    }
+
+    @Test
+    public void sharedList_growingIsIndexed() {
+        List<Song> streaming = new ArrayList<>(songs(2));
+        PlaybackQueue queue = new PlaybackQueue();
+        queue.setSongs(streaming);
+        assertEquals(1, queue.indexOf(id(1)));
+
+        streaming.addAll(songs(2, 50));
+        assertEquals(50, queue.size());
+        assertEquals(49, queue.indexOf(id(49)));
+        assertEquals(0, queue.indexOf(id(0)));
+    }
+
+    @Test
+    public void add_appendsAndIndexes() {
+        PlaybackQueue queue = new PlaybackQueue();
+        queue.setSongs(songs(5));
+        assertEquals(4, queue.indexOf(id(4)));
+
+        queue.add(song(100));
+        assertEquals(5, queue.indexOf(100));
+        assertEquals(4, queue.indexOf(id(4)));
+    }
+
+    @Test
+    public void addAtPosition_shiftsLaterSongs() {
+        PlaybackQueue queue = new PlaybackQueue();
+        queue.setSongs(songs(5));
+        assertEquals(3, queue.indexOf(id(3)));
+
+        queue.add(1, song(100));
+        assertEquals(1, queue.indexOf(100));
+        assertEquals(0, queue.indexOf(id(0)));
+        assertEquals(4, queue.indexOf(id(3)));
+    }
+
+    @Test
+    public void move_updatesPositions() {
+        PlaybackQueue queue = new PlaybackQueue();
+        queue.setSongs(songs(5));
+        assertEquals(0, queue.indexOf(id(0)));
+
+        queue.move(0, 4);
+        assertEquals(4, queue.indexOf(id(0)));
+        assertEquals(0, queue.indexOf(id(1)));
+        assertEquals(id(1), queue.get(0).getId());
+
+        queue.move(4, 0);
+        assertEquals(0, queue.indexOf(id(0)));
+    }
+
+    @Test
+    public void remove_dropsSongAndShiftsLaterOnes() {
+        PlaybackQueue queue = new PlaybackQueue();
+        queue.setSongs(songs(5));
+        assertEquals(4, queue.indexOf(id(4)));
+
+        assertEquals(id(2), queue.remove(2).getId());
+        assertEquals(-1, queue.indexOf(id(2)));
+        assertEquals(3, queue.indexOf(id(4)));
+        assertEquals(4, queue.size());
+    }
+
+    @Test
+    public void setSongs_replacesIndex() {
+        PlaybackQueue queue = new PlaybackQueue();
+        queue.setSongs(songs(5));
+        assertEquals(2, queue.indexOf(id(2)));
+
+        queue.setSongs(Arrays.asList(song(id(2)), song(7)));
+        assertEquals(0, queue.indexOf(id(2)));
+        assertEquals(-1, queue.indexOf(id(3)));
+    }
+
+    @Test
+    public void randomEdits_matchLinearSearch() {
+        Random random = new Random(42);
+        List<Song> expected = new ArrayList<>(songs(200));
+        PlaybackQueue queue = new PlaybackQueue();
+        queue.setSongs(new ArrayList<>(expected));
+        long nextId = 1000;
+
+        for (int step = 0; step < 2000; step++) {
+            int op = random.nextInt(4);
+            if (op == 0 || expected.isEmpty()) {
+                Song song = song(random.nextInt(5) == 0 && !expected.isEmpty()
+                        ? expected.get(random.nextInt(expected.size())).getId() : nextId++);
+                int position = random.nextInt(expected.size() + 1);
+                if (position == expected.size()) {
+                    expected.add(song);
+                    queue.add(song);
+                } else {
+                    expected.add(position, song);
+                    queue.add(position, song);
+                }
+            } else if (op == 1) {
+                int position = random.nextInt(expected.size());
+                assertEquals(expected.remove(position).getId(), queue.remove(position).getId());
+            } else if (op == 2) {
+                int from = random.nextInt(expected.size());
+                int to = random.nextInt(expected.size());
+                expected.add(to, expected.remove(from));
+                queue.move(from, to);
+            }
+
+            assertEquals(expected.size(), queue.size());
+            long probe = random.nextInt(5) == 0 ? nextId + 1
+                    : expected.isEmpty() ? 0 : expected.get(random.nextInt(expected.size())).getId();
+            assertEquals("step " + step, linearIndexOf(expected, probe), queue.indexOf(probe));
+        }
+    }
+
+    private static int linearIndexOf(List<Song> songs, long id) {
+        for (int i = 0; i < songs.size(); i++) {
+            if (songs.get(i).getId() == id) return i;
+        }
+        return -1;
+    }
+
+    private static long id(int i) {
+        return 10 + i * 7L;
+    }
+
+    private static List<Song> songs(int count) {
+        return songs(0, count);
+    }
+
+    private static List<Song> songs(int from, int to) {
+        List<Song> songs = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            songs.add(song(id(i)));
+        }
+        return songs;
+    }
+
+    private static Song song(long id) {
+        return new Song(id, "Song " + id, "Artist", "Album", 1, "/music/" + id + ".mp3", 1000);
+    }
+}
@@ -0,0 +1,137 @@
+package com.uxp.musicq;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SearchIndexTest {
+    private SearchIndex index;
+
+    @Before
+    public void setUp() {
+        index = new SearchIndex();
+        index.add(1, "Halo", "Beyoncé", "I Am... Sasha Fierce");
+        index.add(2, "Bohemian Rhapsody", "Queen", "A Night at the Opera");
+        index.add(3, "Don't Stop Me Now", "Queen", "Jazz");
+        index.add(4, "Stop", "Spice Girls", "Spiceworld");
+        index.add(5, "Symphony No. 9", "Beethoven", "Symphonies");
+    }
+
+    @Test
+    public void prefix_matchesWordStarts() {
+        assertMatches(index.search("boh"), false, 2);
+        assertMatches(index.search("que"), false, 2, 3);
+    }
+
+    @Test
+    public void prefix_ignoresCaseAndAccents() {
+        assertMatches(index.search("BEYONCE"), false, 1);
+        assertMatches(index.search("beyoncé"), false, 1);
+    }
+
+    @Test
+    public void prefix_everyWordMustMatch() {
+        assertMatches(index.search("stop queen"), false, 3);
+        assertMatches(index.search("queen jazz"), false, 3);
+        assertMatches(index.search("stop"), false, 3, 4);
+    }
+
+    @Test
+    public void prefix_punctuationSplitsWords() {
+        assertMatches(index.search("don"), false, 3);
+        assertMatches(index.search("no 9"), false, 5);
+    }
+
+    @Test
+    public void blankQuery_matchesNothing() {
+        assertMatches(index.search(""), false);
+        assertMatches(index.search("  ... "), false);
+    }
+
+    @Test
+    public void fuzzy_oneTypo() {
+        assertMatches(index.search("rhapsdoy"), true, 2);
+        assertMatches(index.search("bohemain"), true, 2);
+        assertMatches(index.search("beethovan"), true, 5);
+    }
+
+    @Test
+    public void fuzzy_shortWordsNeedExactPrefix() {
+        assertMatches(index.search("qeu"), true);
+    }
+
+    @Test
+    public void fuzzy_tooManyEdits() {
+        assertMatches(index.search("rapsodie"), true);
+    }
+
+    @Test
+    public void fuzzy_fewestEditsRankFirst() {
+        index.add(6, "Bohemian Rapsody", "Tribute Band", "Covers");
+        SearchIndex.Result result = index.search("bohemain rapsody");
+        assertTrue(result.fuzzy);
+        assertArrayEquals(new long[]{6, 2}, result.ids);
+    }
+
+    @Test
+    public void remove_dropsSongFromResults() {
+        index.remove(3);
+        assertMatches(index.search("queen"), false, 2);
+        assertMatches(index.search("jazz"), true);
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    public void add_replacesSongWithSameId() {
+        index.add(4, "Wannabe", "Spice Girls", "Spice");
+        assertMatches(index.search("stop"), false, 3);
+        assertMatches(index.search("wannabe"), false, 4);
+        assertEquals(5, index.size());
+    }
+
+    @Test
+    public void build_indexesEveryRow() {
+        SongStore store = new SongStore.Builder(3)
+                .add(new Song(30, "Yellow", "Coldplay", "Parachutes", 1, "/m/y.mp3", 1))
+                .add(new Song(10, "Clocks", "Coldplay", "A Rush of Blood", 2, "/m/c.mp3", 1))
+                .add(new Song(20, "Creep", "Radiohead", "Pablo Honey", 3, "/m/cr.mp3", 1))
+                .build();
+        SearchIndex built = SearchIndex.build(store);
+        assertEquals(3, built.size());
+        assertMatches(built.search("coldplay"), false, 10, 30);
+        assertMatches(built.search("cr"), false, 20);
+    }
+
+    @Test
+    public void editDistance_countsSwapsAsOneEdit() {
+        assertEquals(0, SearchIndex.editDistance("queen", "queen", 2));
+        assertEquals(1, SearchIndex.editDistance("queen", "qeuen", 2));
+        assertEquals(1, SearchIndex.editDistance("queen", "quen", 2));
+        assertEquals(1, SearchIndex.editDistance("queen", "queens", 2));
+        assertEquals(2, SearchIndex.editDistance("queen", "qeuens", 2));
+    }
+
+    @Test
+    public void editDistance_stopsPastLimit() {
+        assertEquals(2, SearchIndex.editDistance("abcdef", "uvwxyz", 1));
+    }
+
+    @Test
+    public void tokenize_foldsAndSplits() {
+        List<String> tokens = new ArrayList<>();
+        SearchIndex.tokenize("Café del Mar — Vol. 2", tokens);
+        assertEquals(Arrays.asList("cafe", "del", "mar", "vol", "2"), tokens);
+    }
+
+    private static void assertMatches(SearchIndex.Result result, boolean fuzzy, long... ids) {
+        assertEquals(fuzzy, result.fuzzy);
+        long[] sorted = result.ids.clone();
+        Arrays.sort(sorted);
+        assertArrayEquals(ids, sorted);
+    }
+}
@@ -0,0 +1,211 @@
+package com.uxp.musicq;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SongStoreTest {
+    private SongStore store;
+
+    @Before
+    public void setUp() {
+        Locale.setDefault(Locale.ENGLISH);
+        store = new SongStore.Builder(0)
+                .add(new Song(40, "delta", "Bravo", "Second", 2, "/music/b/delta.mp3", 300, 2, 400, "Rock"))
+                .add(new Song(10, "Alpha", "bravo", "Second", 2, "/music/b/alpha.mp3", 100, 1, 100, "Rock"))
+                .add(new Song(30, "Charlie", "Alpha", "First", 1, "/music/a/charlie.mp3", 200, 1, 300, "Pop"))
+                .add(new Song(20, "Bravo", "Alpha", "First", 1, "/music/a/bravo.mp3", 200, 2, 200, "Pop"))
+                .build();
+    }
+
+    @Test
+    public void build_rowsInTitleOrder() {
+        assertEquals(4, store.size());
+        assertEquals("Alpha", store.getTitle(0));
+        assertEquals("Bravo", store.getTitle(1));
+        assertEquals("Charlie", store.getTitle(2));
+        assertEquals("delta", store.getTitle(3));
+    }
+
+    @Test
+    public void build_keepsEveryColumn() {
+        int row = store.indexOf(30);
+        Song song = store.get(row);
+        assertEquals(30, song.getId());
+        assertEquals("Charlie", song.getTitle());
+        assertEquals("Alpha", song.getArtist());
+        assertEquals("First", song.getAlbum());
+        assertEquals(1, song.getAlbumId());
+        assertEquals("/music/a/charlie.mp3", song.getPath());
+        assertEquals(200, song.getDuration());
+        assertEquals(1, song.getTrack());
+        assertEquals(300, song.getDateAdded());
+        assertEquals("Pop", song.getGenre());
+    }
+
+    @Test
+    public void build_sharesPooledStrings() {
+        assertEquals(2, store.albumPool.length);
+        assertEquals(2, store.dirPool.length);
+        assertSame(store.getArtist(store.indexOf(20)), store.getArtist(store.indexOf(30)));
+    }
+
+    @Test
+    public void build_equalTitlesOrderedById() {
+        SongStore twins = new SongStore.Builder(2)
+                .add(new Song(9, "Same", "A", "A", 1, "/a", 1))
+                .add(new Song(3, "same", "B", "B", 2, "/b", 1))
+                .build();
+        assertEquals(3, twins.getId(0));
+        assertEquals(9, twins.getId(1));
+    }
+
+    @Test
+    public void indexOf_andContains() {
+        for (int row = 0; row < store.size(); row++) {
+            assertEquals(row, store.indexOf(store.getId(row)));
+            assertTrue(store.contains(store.getId(row)));
+        }
+        assertEquals(-1, store.indexOf(99));
+        assertFalse(store.contains(99));
+    }
+
+    @Test
+    public void titleOrder_isTheRowsThemselves() {
+        assertNull(store.getOrder(SongStore.SortOrder.TITLE));
+        assertTrue(store.hasOrder(SongStore.SortOrder.TITLE));
+        List<Song> songs = store.asList(SongStore.SortOrder.TITLE);
+        assertEquals(10, songs.get(0).getId());
+        assertEquals(40, songs.get(3).getId());
+    }
+
+    @Test
+    public void artistOrder_thenAlbumThenTrack() {
+        // Alpha/First track 1, Alpha/First track 2, bravo/Second track 1, Bravo/Second track 2
+        assertOrder(SongStore.SortOrder.ARTIST, 30, 20, 10, 40);
+    }
+
+    @Test
+    public void albumOrder_thenTrack() {
+        assertOrder(SongStore.SortOrder.ALBUM, 30, 20, 10, 40);
+    }
+
+    @Test
+    public void durationOrder_tiesByTitle() {
+        assertOrder(SongStore.SortOrder.DURATION, 10, 20, 30, 40);
+    }
+
+    @Test
+    public void dateAddedOrder_newestFirst() {
+        assertOrder(SongStore.SortOrder.DATE_ADDED, 40, 30, 20, 10);
+    }
+
+    @Test
+    public void trimOrders_dropsLeastRecentlyUsedFirst() {
+        store.getOrder(SongStore.SortOrder.ARTIST);
+        store.getOrder(SongStore.SortOrder.DURATION);
+        assertEquals(2 * 4 * 4, store.getOrderBytes());
+
+        store.trimOrders(4 * 4);
+        assertEquals(4 * 4, store.getOrderBytes());
+        assertTrue(store.hasOrder(SongStore.SortOrder.DURATION));
+        assertFalse(store.hasOrder(SongStore.SortOrder.ALBUM));
+
+        store.trimOrders(0);
+        assertEquals(0, store.getOrderBytes());
+    }
+
+    @Test
+    public void trimOrders_heldOrderIsHandedOutAgain() {
+        int[] held = store.getOrder(SongStore.SortOrder.ARTIST);
+        store.trimOrders(0);
+        assertTrue(store.hasOrder(SongStore.SortOrder.ARTIST));
+        assertSame(held, store.getOrder(SongStore.SortOrder.ARTIST));
+        assertEquals(4 * 4, store.getOrderBytes());
+    }
+
+    @Test
+    public void maxOrderBytes_excludesTitle() {
+        assertEquals((SongStore.SortOrder.values().length - 1) * 4 * 4, store.getMaxOrderBytes());
+    }
+
+    @Test
+    public void builderAddRow_copiesRow() {
+        SongStore.Builder builder = new SongStore.Builder(store.size());
+        for (int row = store.size() - 1; row >= 0; row--) {
+            builder.add(store, row);
+        }
+        SongStore copy = builder.build();
+        for (int row = 0; row < store.size(); row++) {
+            assertTrue(store.get(row).hasSameContent(copy.get(row)));
+        }
+    }
+
+    @Test
+    public void inCurrentLocale_sameLocaleIsSameStore() {
+        assertSame(store, store.inCurrentLocale());
+    }
+
+    @Test
+    public void inCurrentLocale_otherLocaleResorts() {
+        Locale.setDefault(Locale.forLanguageTag("sv"));
+        try {
+            SongStore swedish = new SongStore.Builder(2)
+                    .add(new Song(1, "Öl", "A", "A", 1, "/a", 1))
+                    .add(new Song(2, "Zebra", "A", "A", 1, "/b", 1))
+                    .build();
+            // Swedish sorts Ö after Z
+            assertEquals(2, swedish.getId(0));
+
+            Locale.setDefault(Locale.GERMAN);
+            SongStore german = swedish.inCurrentLocale();
+            assertNotSame(swedish, german);
+            assertEquals(1, german.getId(0));
+        } finally {
+            Locale.setDefault(Locale.ENGLISH);
+        }
+    }
+
+    @Test
+    public void largeStore_ordersMatchComparator() {
+        Random random = new Random(7);
+        SongStore.Builder builder = new SongStore.Builder(0);
+        for (int i = 0; i < 2000; i++) {
+            builder.add(new Song(i, "Title " + random.nextInt(300), "Artist " + random.nextInt(20),
+                    "Album " + random.nextInt(50), random.nextInt(50), "/music/" + i + ".mp3",
+                    random.nextInt(100) * 1000L, random.nextInt(12), random.nextInt(1000)));
+        }
+        SongStore large = builder.build();
+
+        for (int row = 1; row < large.size(); row++) {
+            int result = SortKeys.compare(large.sortKeys.titles[row - 1], large.sortKeys.titles[row]);
+            assertTrue(result < 0 || (result == 0 && large.getId(row - 1) < large.getId(row)));
+        }
+        int[] byDuration = large.getOrder(SongStore.SortOrder.DURATION);
+        for (int i = 1; i < byDuration.length; i++) {
+            long previous = large.getDuration(byDuration[i - 1]);
+            long current = large.getDuration(byDuration[i]);
+            assertTrue(previous < current || (previous == current && byDuration[i - 1] < byDuration[i]));
+        }
+        int[] byAlbum = large.getOrder(SongStore.SortOrder.ALBUM);
+        for (int i = 1; i < byAlbum.length; i++) {
+            int result = large.compareAlbums(byAlbum[i - 1], byAlbum[i]);
+            assertTrue(result < 0 || (result == 0
+                    && large.getTrack(byAlbum[i - 1]) <= large.getTrack(byAlbum[i])));
+        }
+    }
+
+    private void assertOrder(SongStore.SortOrder order, long... ids) {
+        List<Song> songs = store.asList(order);
+        long[] actual = new long[songs.size()];
+        for (int i = 0; i < actual.length; i++) {
+            actual[i] = songs.get(i).getId();
+        }
+        assertArrayEquals(ids, actual);
+    }
+}